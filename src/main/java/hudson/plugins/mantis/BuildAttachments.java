@@ -0,0 +1,205 @@
+package hudson.plugins.mantis;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.plugins.mantis.soap.SiteThrottle;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Build files attached to issues: workspace files matching a pattern and the console log.
+ * Files are streamed from where they are, by as many workers as the {@link SiteThrottle} of the
+ * site lets run at the same time.
+ */
+final class BuildAttachments {
+
+    /**
+     * in KB.
+     */
+    static final int DEFAULT_MAX_SIZE = 1024;
+
+    /**
+     * files matching the pattern beyond this count are ignored.
+     */
+    static final int MAX_FILES = 20;
+
+    private final String artifacts;
+
+    private final boolean consoleLog;
+
+    private final long maxBytes;
+
+    /**
+     * @param artifacts Ant pattern of the workspace files to attach, or null.
+     * @param maxSize in KB, 0 for {@link #DEFAULT_MAX_SIZE}.
+     */
+    BuildAttachments(final String artifacts, final boolean consoleLog, final int maxSize) {
+        this.artifacts = Util.fixEmptyAndTrim(artifacts);
+        this.consoleLog = consoleLog;
+        this.maxBytes = (maxSize > 0 ? maxSize : DEFAULT_MAX_SIZE) * 1024L;
+    }
+
+    boolean isEmpty() {
+        return artifacts == null && !consoleLog;
+    }
+
+    /**
+     * Attaches the files to every issue, failures are only logged.
+     * @return number of attachments added.
+     */
+    int attach(final MantisSite site, final AbstractBuild<?, ?> build, final Collection<Integer> ids,
+            final PrintStream logger) throws InterruptedException {
+        final long start = System.nanoTime();
+        final List<Upload> uploads = new ArrayList<Upload>();
+        for (final Upload file : collect(build, logger)) {
+            for (final Integer id : ids) {
+                uploads.add(file.to(id));
+            }
+        }
+        if (uploads.isEmpty()) {
+            return 0;
+        }
+
+        // as many workers as the site lets run at the same time, taking the uploads in turn:
+        // more would only wait for the throttle, each in a thread of its own
+        final int count = Math.min(uploads.size(), Math.max(1, SiteThrottle.of(site).getConcurrency()));
+        final AtomicInteger next = new AtomicInteger();
+        final String[] failures = new String[uploads.size()];
+        final List<Future<Void>> workers = new ArrayList<Future<Void>>();
+        for (int w = 0; w < count; w++) {
+            workers.add(MantisExecutor.get().submit(new Callable<Void>() {
+                public Void call() throws InterruptedException {
+                    for (int i = next.getAndIncrement(); i < uploads.size(); i = next.getAndIncrement()) {
+                        final Upload upload = uploads.get(i);
+                        try {
+                            site.addAttachment(upload.issueId, upload.name, upload.type, upload.file,
+                                    upload.skip, upload.length);
+                        } catch (final MantisHandlingException e) {
+                            failures[i] = String.valueOf(e.getMessage());
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        try {
+            for (final Future<Void> worker : workers) {
+                try {
+                    MantisExecutor.await(worker);
+                } catch (final MantisHandlingException e) {
+                    // the uploads of the worker report their own failures
+                    LOGGER.log(Level.WARNING, null, e);
+                }
+            }
+        } finally {
+            for (final Future<Void> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+
+        int attached = 0;
+        for (int i = 0; i < uploads.size(); i++) {
+            final Upload upload = uploads.get(i);
+            if (failures[i] == null) {
+                Utility.log(logger, Messages.BuildAttachments_Attached(upload.name, upload.length, upload.issueId));
+                attached++;
+            } else {
+                Utility.log(logger, Messages.BuildAttachments_Failed(upload.name, upload.issueId, failures[i]));
+            }
+        }
+        Utility.log(logger, Messages.BuildAttachments_Done(attached, uploads.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return attached;
+    }
+
+    private List<Upload> collect(final AbstractBuild<?, ?> build, final PrintStream logger)
+            throws InterruptedException {
+        final List<Upload> files = new ArrayList<Upload>();
+        final FilePath workspace = build.getWorkspace();
+        if (artifacts != null && workspace != null) {
+            try {
+                final FilePath[] matches = workspace.list(artifacts);
+                if (matches.length > MAX_FILES) {
+                    Utility.log(logger, Messages.BuildAttachments_TooMany(MAX_FILES, artifacts));
+                }
+                for (int i = 0; i < matches.length && i < MAX_FILES; i++) {
+                    final long length = matches[i].length();
+                    if (length > maxBytes) {
+                        Utility.log(logger, Messages.BuildAttachments_TooLarge(matches[i].getName(), maxBytes / 1024));
+                        continue;
+                    }
+                    files.add(new Upload(matches[i], matches[i].getName(), contentType(matches[i].getName()), 0,
+                            length));
+                }
+            } catch (final IOException e) {
+                Utility.log(logger, Messages.BuildAttachments_ReadFailed(artifacts, e.getMessage()));
+            }
+        }
+        if (consoleLog) {
+            final FilePath log = new FilePath(build.getLogFile());
+            try {
+                // the log is still being written: only what is there now is sent
+                final long length = log.length();
+                final long skip = Math.max(0, length - maxBytes);
+                if (skip > 0) {
+                    Utility.log(logger, Messages.BuildAttachments_LogTail(maxBytes / 1024));
+                }
+                files.add(new Upload(log, "build-" + build.getNumber() + "-console.log", "text/plain", skip,
+                        length - skip));
+            } catch (final IOException e) {
+                Utility.log(logger, Messages.BuildAttachments_ReadFailed(log.getName(), e.getMessage()));
+            }
+        }
+        return files;
+    }
+
+    private static String contentType(final String name) {
+        final String type = URLConnection.guessContentTypeFromName(name);
+        return type != null ? type : "application/octet-stream";
+    }
+
+    /**
+     * One file to attach to one issue.
+     */
+    private static final class Upload {
+
+        private final FilePath file;
+
+        private final String name;
+
+        private final String type;
+
+        private final long skip;
+
+        private final long length;
+
+        private int issueId;
+
+        Upload(final FilePath file, final String name, final String type, final long skip, final long length) {
+            this.file = file;
+            this.name = name;
+            this.type = type;
+            this.skip = skip;
+            this.length = length;
+        }
+
+        Upload to(final int id) {
+            final Upload upload = new Upload(file, name, type, skip, length);
+            upload.issueId = id;
+            return upload;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(BuildAttachments.class.getName());
+}
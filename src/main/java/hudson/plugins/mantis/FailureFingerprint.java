@@ -0,0 +1,101 @@
+package hudson.plugins.mantis;
+
+import hudson.Util;
+import hudson.console.ConsoleNote;
+import hudson.model.AbstractBuild;
+import hudson.plugins.mantis.scripts.LogTail;
+import hudson.tasks.test.AbstractTestResultAction;
+import hudson.tasks.test.TestResult;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Computes a fingerprint of a failed build, so that recurring failures can be
+ * matched with the ticket filed for the first one.
+ * The fingerprint is made of the job name, the build result and either the
+ * failing tests or, if there are none, a signature of the error lines of the log.
+ */
+final class FailureFingerprint {
+
+    /**
+     * number of log lines inspected from the end of the log.
+     */
+    private static final int LOG_LINES = 200;
+
+    /**
+     * bytes read at most from the end of the log.
+     */
+    private static final int LOG_BYTES = 64 * 1024;
+
+    /**
+     * number of error lines making the log signature.
+     */
+    private static final int SIGNATURE_LINES = 5;
+
+    /**
+     * parts of a line which change from build to build: hex values, numbers.
+     */
+    private static final Pattern VOLATILE = Pattern.compile("0x[0-9a-fA-F]+|\\d+");
+
+    private FailureFingerprint() {
+        // hide default constructor
+    }
+
+    static String compute(final AbstractBuild<?, ?> build) throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        buf.append(build.getParent().getFullName()).append('\n');
+        buf.append(build.getResult()).append('\n');
+
+        final List<String> tests = failedTests(build);
+        if (!tests.isEmpty()) {
+            for (final String test : tests) {
+                buf.append("test:").append(test).append('\n');
+            }
+        } else {
+            final List<String> lines = LogTail.read(build.getLogFile(), build.getCharset(), LOG_BYTES, LOG_LINES);
+            for (final String line : logSignature(lines)) {
+                buf.append("log:").append(line).append('\n');
+            }
+        }
+        return Util.getDigestOf(buf.toString());
+    }
+
+    static List<String> failedTests(final AbstractBuild<?, ?> build) {
+        final List<String> names = new ArrayList<String>();
+        final AbstractTestResultAction<?> action = build.getAction(AbstractTestResultAction.class);
+        if (action == null) {
+            return names;
+        }
+        for (final TestResult test : action.getFailedTests()) {
+            names.add(test.getFullName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * Extracts the last error lines of the log, with volatile parts masked.
+     */
+    static List<String> logSignature(final List<String> lines) {
+        final LinkedList<String> signature = new LinkedList<String>();
+        for (final String line : lines) {
+            final String plain = ConsoleNote.removeNotes(line);
+            if (!LogTail.ERROR_LINE.matcher(plain).find()) {
+                continue;
+            }
+            signature.add(normalize(plain));
+            if (signature.size() > SIGNATURE_LINES) {
+                signature.removeFirst();
+            }
+        }
+        return signature;
+    }
+
+    static String normalize(final String line) {
+        return VOLATILE.matcher(line).replaceAll("#").replaceAll("\\s+", " ").trim();
+    }
+}
@@ -0,0 +1,219 @@
+package hudson.plugins.mantis;
+
+import hudson.XmlFile;
+import hudson.model.Hudson;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+
+/**
+ * Local index of open failure fingerprints and the tickets filed for them.
+ * Stored in $JENKINS_HOME/mantis/fingerprints.xml.
+ */
+final class FailureFingerprintIndex {
+
+    private static FailureFingerprintIndex instance;
+
+    /**
+     * locks of the fingerprints being handled, by key.
+     */
+    private static final Map<String, FingerprintLock> LOCKS = new HashMap<String, FingerprintLock>();
+
+    /**
+     * key is site name + fingerprint.
+     */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * use {@link #get()}, except in tests.
+     */
+    FailureFingerprintIndex() {
+        //
+    }
+
+    static synchronized FailureFingerprintIndex get() {
+        if (instance == null) {
+            instance = load();
+        }
+        return instance;
+    }
+
+    synchronized Entry find(final MantisSite site, final String fingerprint) {
+        return entries.get(key(site, fingerprint));
+    }
+
+    synchronized void register(final MantisSite site, final String fingerprint, final String jobName,
+            final int issueNo, final int buildNumber) {
+        entries.put(key(site, fingerprint), new Entry(jobName, issueNo, buildNumber));
+        save();
+    }
+
+    /**
+     * Records one more occurrence of an open fingerprint.
+     * @return the updated entry, or null if the fingerprint is not open.
+     */
+    synchronized Entry recur(final MantisSite site, final String fingerprint, final int buildNumber) {
+        final Entry entry = entries.get(key(site, fingerprint));
+        if (entry == null) {
+            return null;
+        }
+        entry.lastBuild = buildNumber;
+        entry.count++;
+        save();
+        return entry;
+    }
+
+    /**
+     * Forgets the fingerprint, typically once its ticket is closed.
+     */
+    synchronized void forget(final MantisSite site, final String fingerprint) {
+        if (entries.remove(key(site, fingerprint)) != null) {
+            save();
+        }
+    }
+
+    /**
+     * Waits until no other build handles the fingerprint, so that concurrent builds failing the same way
+     * file one ticket. Must be followed by {@link #unlock(MantisSite, String)}.
+     */
+    static void lock(final MantisSite site, final String fingerprint) throws InterruptedException {
+        final String key = key(site, fingerprint);
+        final FingerprintLock lock;
+        synchronized (LOCKS) {
+            FingerprintLock held = LOCKS.get(key);
+            if (held == null) {
+                held = new FingerprintLock();
+                LOCKS.put(key, held);
+            }
+            held.users++;
+            lock = held;
+        }
+        try {
+            lock.lockInterruptibly();
+        } catch (final InterruptedException e) {
+            release(key, lock);
+            throw e;
+        }
+    }
+
+    static void unlock(final MantisSite site, final String fingerprint) {
+        final String key = key(site, fingerprint);
+        final FingerprintLock lock;
+        synchronized (LOCKS) {
+            lock = LOCKS.get(key);
+        }
+        lock.unlock();
+        release(key, lock);
+    }
+
+    private static void release(final String key, final FingerprintLock lock) {
+        synchronized (LOCKS) {
+            if (--lock.users == 0) {
+                LOCKS.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Forgets all the fingerprints of the job, typically once it builds successfully again.
+     */
+    synchronized void resolve(final String jobName) {
+        boolean changed = false;
+        for (final Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            if (it.next().jobName.equals(jobName)) {
+                it.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    private static String key(final MantisSite site, final String fingerprint) {
+        return site.getName() + '#' + fingerprint;
+    }
+
+    private void save() {
+        try {
+            getConfigFile().write(this);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save " + getConfigFile(), e);
+        }
+    }
+
+    private static FailureFingerprintIndex load() {
+        final XmlFile file = getConfigFile();
+        if (file.exists()) {
+            try {
+                return (FailureFingerprintIndex) file.read();
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to load " + file, e);
+            }
+        }
+        return new FailureFingerprintIndex();
+    }
+
+    private static XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM, new File(Hudson.getInstance().getRootDir(), "mantis/fingerprints.xml"));
+    }
+
+    /**
+     * Lock of a fingerprint, dropped once no build waits for it.
+     */
+    private static final class FingerprintLock extends ReentrantLock {
+
+        /**
+         * builds holding or waiting for the lock, guarded by LOCKS.
+         */
+        private int users;
+    }
+
+    /**
+     * One open fingerprint.
+     */
+    static final class Entry {
+
+        private final String jobName;
+
+        private final int issueNo;
+
+        private final int firstBuild;
+
+        private int lastBuild;
+
+        private int count;
+
+        Entry(final String jobName, final int issueNo, final int buildNumber) {
+            this.jobName = jobName;
+            this.issueNo = issueNo;
+            this.firstBuild = buildNumber;
+            this.lastBuild = buildNumber;
+            this.count = 1;
+        }
+
+        int getIssueNo() {
+            return issueNo;
+        }
+
+        int getFirstBuild() {
+            return firstBuild;
+        }
+
+        int getLastBuild() {
+            return lastBuild;
+        }
+
+        int getCount() {
+            return count;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(FailureFingerprintIndex.class.getName());
+}
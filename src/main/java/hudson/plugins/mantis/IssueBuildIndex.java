@@ -0,0 +1,356 @@
+package hudson.plugins.mantis;
+
+import hudson.model.Job;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Per-job index of the builds which referenced, filed or closed each issue, so that they can be
+ * found without loading the builds. It is appended to as builds complete or are deleted, and read
+ * once, on first use, from $JOB/mantis/issues.index. Records end with a dot, like in {@link ReleaseJournal}.
+ * <pre>
+ * BUILD 12 REFERENCED 1234 1235 .
+ * BUILD 13 CLOSED 1234 .
+ * DELETE 12 .
+ * BACKFILLED .
+ * </pre>
+ * The file is rewritten with only the live records when loaded or after a deletion, once those are
+ * less than half of it.
+ */
+final class IssueBuildIndex {
+
+    /**
+     * How a build used an issue, the later kinds prevail.
+     */
+    enum Kind {
+        REFERENCED, FILED, CLOSED
+    }
+
+    private static final String BUILD = "BUILD";
+
+    private static final String DELETE = "DELETE";
+
+    private static final String BACKFILLED = "BACKFILLED";
+
+    /**
+     * records below which the file is never rewritten.
+     */
+    private static final int COMPACT_MIN = 64;
+
+    private static final String END = ".";
+
+    /**
+     * key is the directory of the job, so that a renamed job gets the index moved with it. Entries are
+     * dropped as jobs are deleted or renamed, see {@link IssueBuildIndexer.JobListener}.
+     */
+    private static final ConcurrentMap<String, IssueBuildIndex> JOBS = new ConcurrentHashMap<String, IssueBuildIndex>();
+
+    private final File file;
+
+    /**
+     * issue id to the numbers of the builds which used it.
+     */
+    private final Map<Integer, TreeMap<Integer, Kind>> issues = new HashMap<Integer, TreeMap<Integer, Kind>>();
+
+    /**
+     * records in the file, live or not.
+     */
+    private int records;
+
+    /**
+     * whether the builds completed before the index existed have been added, see {@link IssueBuildIndexer.Backfill}.
+     */
+    private boolean backfilled;
+
+    IssueBuildIndex(final File file) {
+        this.file = file;
+        load();
+        compactIfSparse();
+    }
+
+    static IssueBuildIndex of(final Job<?, ?> job) {
+        return of(job.getRootDir());
+    }
+
+    static IssueBuildIndex of(final File dir) {
+        IssueBuildIndex index = JOBS.get(dir.getPath());
+        if (index == null) {
+            final IssueBuildIndex created = new IssueBuildIndex(new File(new File(dir, "mantis"), "issues.index"));
+            index = JOBS.putIfAbsent(dir.getPath(), created);
+            if (index == null) {
+                index = created;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the job, or null if none of its builds used an issue.
+     */
+    static IssueBuildIndex ifExists(final Job<?, ?> job) {
+        final IssueBuildIndex index = JOBS.get(job.getRootDir().getPath());
+        if (index != null || !new File(new File(job.getRootDir(), "mantis"), "issues.index").exists()) {
+            return index;
+        }
+        return of(job);
+    }
+
+    /**
+     * Drops the indexes of the jobs in the directory, once they are deleted or moved: a job created later
+     * in the same directory must not get their builds.
+     */
+    static void forget(final File dir) {
+        final String prefix = dir.getPath() + File.separator;
+        for (final Iterator<String> it = JOBS.keySet().iterator(); it.hasNext();) {
+            final String path = it.next();
+            if (path.equals(dir.getPath()) || path.startsWith(prefix)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the builds which used the issue, most recent first.
+     */
+    synchronized Map<Integer, Kind> find(final int id) {
+        final TreeMap<Integer, Kind> builds = issues.get(id);
+        if (builds == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(new LinkedHashMap<Integer, Kind>(builds.descendingMap()));
+    }
+
+    /**
+     * @return number of issues indexed.
+     */
+    synchronized int size() {
+        return issues.size();
+    }
+
+    synchronized boolean isBackfilled() {
+        return backfilled;
+    }
+
+    /**
+     * Records that the earlier builds of the job have been added.
+     */
+    synchronized void backfilled() {
+        if (!backfilled) {
+            backfilled = true;
+            append(BACKFILLED + " " + END + "\n");
+            records++;
+        }
+    }
+
+    /**
+     * Records how the build used the issues.
+     */
+    synchronized void add(final int buildNumber, final Map<Kind, ? extends Iterable<Integer>> ids) {
+        final StringBuilder lines = new StringBuilder();
+        for (final Map.Entry<Kind, ? extends Iterable<Integer>> entry : ids.entrySet()) {
+            final StringBuilder line = new StringBuilder(BUILD).append(' ').append(buildNumber)
+                    .append(' ').append(entry.getKey().name());
+            boolean any = false;
+            for (final Integer id : entry.getValue()) {
+                line.append(' ').append(id);
+                put(id, buildNumber, entry.getKey());
+                any = true;
+            }
+            if (any) {
+                lines.append(line).append(' ').append(END).append('\n');
+                records++;
+            }
+        }
+        if (lines.length() > 0) {
+            append(lines.toString());
+        }
+    }
+
+    synchronized void delete(final int buildNumber) {
+        if (remove(buildNumber)) {
+            append(DELETE + " " + buildNumber + " " + END + "\n");
+            records++;
+            compactIfSparse();
+        }
+    }
+
+    /**
+     * Rewrites the file once the records of deleted builds, and of the kinds superseded by later ones,
+     * outnumber the live ones.
+     */
+    private void compactIfSparse() {
+        if (records < COMPACT_MIN) {
+            return;
+        }
+        final Map<Integer, Map<Kind, List<Integer>>> builds = liveRecords();
+        int live = backfilled ? 1 : 0;
+        for (final Map<Kind, List<Integer>> kinds : builds.values()) {
+            live += kinds.size();
+        }
+        if (live * 2 > records) {
+            return;
+        }
+        final StringBuilder lines = new StringBuilder();
+        for (final Map.Entry<Integer, Map<Kind, List<Integer>>> build : builds.entrySet()) {
+            for (final Map.Entry<Kind, List<Integer>> kind : build.getValue().entrySet()) {
+                lines.append(BUILD).append(' ').append(build.getKey()).append(' ').append(kind.getKey().name());
+                for (final Integer id : kind.getValue()) {
+                    lines.append(' ').append(id);
+                }
+                lines.append(' ').append(END).append('\n');
+            }
+        }
+        if (backfilled) {
+            lines.append(BACKFILLED).append(' ').append(END).append('\n');
+        }
+        final File tmp = new File(file.getPath() + ".tmp");
+        try {
+            final FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                out.write(lines.toString().getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.log(Level.FINE, "Compacted {0} from {1} to {2} records", new Object[] {file, records, live});
+            records = live;
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to compact " + file, e);
+        }
+    }
+
+    /**
+     * @return build number to the issues of each kind, as they would be written.
+     */
+    private Map<Integer, Map<Kind, List<Integer>>> liveRecords() {
+        final Map<Integer, Map<Kind, List<Integer>>> builds = new TreeMap<Integer, Map<Kind, List<Integer>>>();
+        for (final Map.Entry<Integer, TreeMap<Integer, Kind>> issue : issues.entrySet()) {
+            for (final Map.Entry<Integer, Kind> build : issue.getValue().entrySet()) {
+                Map<Kind, List<Integer>> kinds = builds.get(build.getKey());
+                if (kinds == null) {
+                    kinds = new EnumMap<Kind, List<Integer>>(Kind.class);
+                    builds.put(build.getKey(), kinds);
+                }
+                List<Integer> ids = kinds.get(build.getValue());
+                if (ids == null) {
+                    ids = new ArrayList<Integer>();
+                    kinds.put(build.getValue(), ids);
+                }
+                ids.add(issue.getKey());
+            }
+        }
+        return builds;
+    }
+
+    private void put(final int id, final int buildNumber, final Kind kind) {
+        TreeMap<Integer, Kind> builds = issues.get(id);
+        if (builds == null) {
+            builds = new TreeMap<Integer, Kind>();
+            issues.put(id, builds);
+        }
+        final Kind previous = builds.get(buildNumber);
+        if (previous == null || previous.compareTo(kind) < 0) {
+            builds.put(buildNumber, kind);
+        }
+    }
+
+    private boolean remove(final int buildNumber) {
+        boolean removed = false;
+        for (final Iterator<TreeMap<Integer, Kind>> it = issues.values().iterator(); it.hasNext();) {
+            final TreeMap<Integer, Kind> builds = it.next();
+            removed |= builds.remove(buildNumber) != null;
+            if (builds.isEmpty()) {
+                it.remove();
+            }
+        }
+        return removed;
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    parse(line.trim());
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load " + file, e);
+        }
+    }
+
+    private void parse(final String line) {
+        final String[] fields = line.split(" ");
+        if (!END.equals(fields[fields.length - 1])) {
+            // record truncated by a crash, ignore it
+            return;
+        }
+        try {
+            if (fields.length == 2 && BACKFILLED.equals(fields[0])) {
+                backfilled = true;
+                records++;
+            } else if (fields.length == 3 && DELETE.equals(fields[0])) {
+                remove(Integer.parseInt(fields[1]));
+                records++;
+            } else if (fields.length > 4 && BUILD.equals(fields[0])) {
+                final int buildNumber = Integer.parseInt(fields[1]);
+                final Kind kind = Kind.valueOf(fields[2]);
+                final List<Integer> ids = new ArrayList<Integer>();
+                for (int i = 3; i < fields.length - 1; i++) {
+                    ids.add(Integer.parseInt(fields[i]));
+                }
+                for (final Integer id : ids) {
+                    put(id, buildNumber, kind);
+                }
+                records++;
+            }
+        } catch (final IllegalArgumentException e) {
+            // truncated line, or written by a later version
+        }
+    }
+
+    private void append(final String lines) {
+        final File dir = file.getParentFile();
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Failed to create " + dir);
+            }
+            final FileOutputStream out = new FileOutputStream(file, true);
+            try {
+                // start with a line separator: a previous run may have crashed in the middle of a line
+                out.write(("\n" + lines).getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to update " + file, e);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(IssueBuildIndex.class.getName());
+}
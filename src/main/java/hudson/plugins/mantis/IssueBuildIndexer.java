@@ -0,0 +1,175 @@
+package hudson.plugins.mantis;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.matrix.MatrixConfiguration;
+import hudson.matrix.MatrixRun;
+import hudson.model.AbstractBuild;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.plugins.mantis.model.MantisIssue;
+import hudson.scm.ChangeLogSet.Entry;
+import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+/**
+ * Adds each completed build to the {@link IssueBuildIndex} of its job, with the issues
+ * its changes refer to and the issues it filed or closed, and removes deleted builds and jobs.
+ * The builds completed before the plugin indexed them are added once, in the background, see {@link Backfill}.
+ */
+@Extension
+public final class IssueBuildIndexer extends RunListener<Run<?, ?>> {
+
+    @Override
+    public void onCompleted(final Run<?, ?> run, final TaskListener listener) {
+        // the changes of a configuration are those of its parent build
+        if (run instanceof MatrixRun) {
+            return;
+        }
+        final Map<IssueBuildIndex.Kind, Set<Integer>> ids = findIssues(run);
+        if (!ids.isEmpty()) {
+            IssueBuildIndex.of(run.getParent()).add(run.getNumber(), ids);
+        }
+    }
+
+    @Override
+    public void onDeleted(final Run<?, ?> run) {
+        if (!(run instanceof MatrixRun)) {
+            IssueBuildIndex.of(run.getParent()).delete(run.getNumber());
+        }
+    }
+
+    static Map<IssueBuildIndex.Kind, Set<Integer>> findIssues(final Run<?, ?> run) {
+        final Map<IssueBuildIndex.Kind, Set<Integer>> ids =
+                new EnumMap<IssueBuildIndex.Kind, Set<Integer>>(IssueBuildIndex.Kind.class);
+
+        final MantisProjectProperty mpp = run.getParent().getProperty(MantisProjectProperty.class);
+        if (mpp != null && run instanceof AbstractBuild) {
+            final Pattern pattern = mpp.getRegexpPattern();
+            for (final Entry change : ((AbstractBuild<?, ?>) run).getChangeSet()) {
+                final Matcher matcher = pattern.matcher(change.getMsg());
+                while (matcher.find()) {
+                    try {
+                        add(ids, IssueBuildIndex.Kind.REFERENCED, Integer.parseInt(matcher.group(1)));
+                    } catch (final NumberFormatException e) {
+                        // not an issue id
+                    }
+                }
+            }
+        }
+        for (final MantisBuildAction action : run.getActions(MantisBuildAction.class)) {
+            for (final MantisIssue issue : action.getIssues()) {
+                add(ids, IssueBuildIndex.Kind.REFERENCED, issue.getId());
+            }
+        }
+        for (final MantisRegisterAction action : run.getActions(MantisRegisterAction.class)) {
+            add(ids, IssueBuildIndex.Kind.FILED, action.getIssueNo());
+        }
+        for (final MantisReleaseAction action : run.getActions(MantisReleaseAction.class)) {
+            for (final Integer id : action.getClosedIssues()) {
+                add(ids, IssueBuildIndex.Kind.CLOSED, id);
+            }
+        }
+        return ids;
+    }
+
+    private static void add(final Map<IssueBuildIndex.Kind, Set<Integer>> ids, final IssueBuildIndex.Kind kind,
+            final int id) {
+        Set<Integer> set = ids.get(kind);
+        if (set == null) {
+            set = new TreeSet<Integer>();
+            ids.put(kind, set);
+        }
+        set.add(id);
+    }
+
+    /**
+     * Adds the builds of the jobs using Mantis which completed before their index existed, once the jobs
+     * are loaded. Loading every build is slow, so it runs in the background, one job after the other, and
+     * each index records that it is done.
+     */
+    static final class Backfill implements Runnable {
+
+        @Initializer(after = InitMilestone.JOB_LOADED)
+        public static void backfill() {
+            Timer.get().submit(new Backfill());
+        }
+
+        public void run() {
+            final Jenkins jenkins = Jenkins.getInstance();
+            if (jenkins == null) {
+                return;
+            }
+            for (final Job<?, ?> job : jenkins.getAllItems(Job.class)) {
+                if (job instanceof MatrixConfiguration || job.getProperty(MantisProjectProperty.class) == null) {
+                    continue;
+                }
+                try {
+                    backfill(job);
+                } catch (final RuntimeException e) {
+                    LOGGER.log(Level.WARNING, Messages.IssueBuildIndexer_BackfillFailed(job.getFullName(),
+                            e.getMessage()), e);
+                }
+            }
+        }
+
+        static void backfill(final Job<?, ?> job) {
+            final IssueBuildIndex index = IssueBuildIndex.of(job);
+            if (index.isBackfilled()) {
+                return;
+            }
+            final long start = System.nanoTime();
+            int builds = 0;
+            for (final Run<?, ?> run : job.getBuilds()) {
+                // builds still running are added by the listener once completed
+                if (run.isBuilding()) {
+                    continue;
+                }
+                final Map<IssueBuildIndex.Kind, Set<Integer>> ids = findIssues(run);
+                if (!ids.isEmpty()) {
+                    index.add(run.getNumber(), ids);
+                    builds++;
+                }
+            }
+            index.backfilled();
+            LOGGER.log(Level.INFO, Messages.IssueBuildIndexer_Backfilled(job.getFullName(), builds,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }
+    }
+
+    /**
+     * Drops the indexes kept for deleted and renamed jobs, including the jobs of a folder.
+     */
+    @Extension
+    public static final class JobListener extends ItemListener {
+
+        @Override
+        public void onDeleted(final Item item) {
+            IssueBuildIndex.forget(item.getRootDir());
+        }
+
+        @Override
+        public void onRenamed(final Item item, final String oldName, final String newName) {
+            // the item has been moved to its new directory already
+            IssueBuildIndex.forget(new File(item.getRootDir().getParentFile(), oldName));
+            IssueBuildIndex.forget(item.getRootDir());
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(IssueBuildIndexer.class.getName());
+}
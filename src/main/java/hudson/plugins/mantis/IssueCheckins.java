@@ -0,0 +1,117 @@
+package hudson.plugins.mantis;
+
+import hudson.plugins.mantis.changeset.ChangeSet;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Check-ins of the changesets of a build. The changesets are grouped by issue, so that an issue gets
+ * one check-in per build whatever the number of commits referencing it, and the check-ins are sent
+ * at the same time, within the limits of the {@link hudson.plugins.mantis.soap.SiteThrottle} of the site.
+ */
+final class IssueCheckins {
+
+    private static final String CRLF = ChangeSet.CRLF;
+
+    /**
+     * issue id to the changelogs of its changesets, in the order of the changesets.
+     */
+    private final Map<Integer, Set<String>> issues;
+
+    IssueCheckins(final Collection<? extends ChangeSet> changeSets) {
+        this.issues = group(changeSets);
+    }
+
+    /**
+     * A commit referencing an issue twice gives the same changelog twice, it is kept once.
+     * @return issue id to the changelogs of its changesets, issues in the order they are first referenced.
+     */
+    static Map<Integer, Set<String>> group(final Collection<? extends ChangeSet> changeSets) {
+        final Map<Integer, Set<String>> issues = new LinkedHashMap<Integer, Set<String>>();
+        for (final ChangeSet changeSet : changeSets) {
+            Set<String> logs = issues.get(changeSet.getId());
+            if (logs == null) {
+                logs = new LinkedHashSet<String>();
+                issues.put(changeSet.getId(), logs);
+            }
+            logs.add(changeSet.createChangeLog());
+        }
+        return issues;
+    }
+
+    boolean isEmpty() {
+        return issues.isEmpty();
+    }
+
+    /**
+     * @param header first line of every check-in.
+     */
+    static String comment(final String header, final Collection<String> logs) {
+        final StringBuilder text = new StringBuilder(header);
+        text.append(CRLF).append(CRLF);
+        for (final String log : logs) {
+            text.append(log);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Sends one check-in to every issue, failures are only logged. The issues are not marked as fixed:
+     * resolving them is left to the release. Check-ins are never merged by the {@link NoteCoalescer}:
+     * they are not notes for Mantis.
+     * @return number of check-ins accepted by Mantis.
+     */
+    int send(final MantisSite site, final String header, final boolean dryRun, final PrintStream logger)
+            throws InterruptedException {
+        if (dryRun) {
+            for (final Map.Entry<Integer, Set<String>> issue : issues.entrySet()) {
+                Utility.log(logger, Messages.IssueCheckins_DryRun(issue.getValue().size(), issue.getKey()));
+            }
+            return 0;
+        }
+
+        final long start = System.nanoTime();
+        final List<Integer> ids = new ArrayList<Integer>(issues.keySet());
+        final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (final Integer id : ids) {
+            final String comment = comment(header, issues.get(id));
+            futures.add(MantisExecutor.get().submit(new Callable<Boolean>() {
+                public Boolean call() throws MantisHandlingException {
+                    return site.checkin(id, comment, false);
+                }
+            }));
+        }
+        int sent = 0;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                final Integer id = ids.get(i);
+                try {
+                    if (MantisExecutor.await(futures.get(i))) {
+                        Utility.log(logger, Messages.IssueCheckins_Sent(issues.get(id).size(), id));
+                        sent++;
+                    } else {
+                        Utility.log(logger, Messages.IssueCheckins_Rejected(id));
+                    }
+                } catch (final MantisHandlingException e) {
+                    Utility.log(logger, Messages.IssueCheckins_Failed(id, e.getMessage()));
+                }
+            }
+        } finally {
+            for (final Future<Boolean> future : futures) {
+                future.cancel(true);
+            }
+        }
+        Utility.log(logger, Messages.IssueCheckins_Done(sent, ids.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return sent;
+    }
+}
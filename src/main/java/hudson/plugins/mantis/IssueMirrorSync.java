@@ -0,0 +1,49 @@
+package hudson.plugins.mantis;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the issues of the projects used by jobs mirrored in the {@link IssueStateCache} of their site,
+ * for the sites searching issue ids only. Each run only reads the issues updated since the previous one.
+ */
+@Extension
+public final class IssueMirrorSync extends AsyncPeriodicWork {
+
+    static final long PERIOD = Long.getLong(IssueMirrorSync.class.getName() + ".period", TimeUnit.MINUTES.toMillis(1));
+
+    public IssueMirrorSync() {
+        super("Mantis issue mirror");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return PERIOD;
+    }
+
+    @Override
+    protected void execute(final TaskListener listener) {
+        final Map<String, Set<Integer>> used = MantisProjectProperty.getUsedProjects();
+        for (final MantisSite site : MantisProjectProperty.DESCRIPTOR.getSites()) {
+            final Set<Integer> projectIds = used.get(site.getName());
+            if (projectIds == null || !site.isIdSearch()) {
+                continue;
+            }
+            final IssueStateCache cache = IssueStateCache.of(site);
+            for (final int projectId : projectIds) {
+                final long start = System.nanoTime();
+                try {
+                    final int read = cache.refresh(site.createSession(), projectId, true);
+                    listener.getLogger().println(Messages.IssueMirrorSync_Synced(site.getName(), projectId, read,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+                } catch (final MantisHandlingException e) {
+                    listener.error(Messages.IssueMirrorSync_Failed(site.getName(), projectId, e.getMessage()));
+                }
+            }
+        }
+    }
+}
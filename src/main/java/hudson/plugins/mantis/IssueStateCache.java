@@ -0,0 +1,225 @@
+package hudson.plugins.mantis;
+
+import hudson.plugins.mantis.model.MantisIssueHeader;
+import hudson.plugins.mantis.soap.IssueHeaderHandler;
+import hudson.plugins.mantis.soap.MantisSession;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local copy of the state of the issues of one site, used by the id-only search.
+ * The ids targeted at a version are fetched with a cheap id search, and their state is
+ * taken from here. The cache of a project is refreshed incrementally before each search:
+ * Mantis lists the issues of a project most recently updated first, so only the issues
+ * updated since the previous refresh are read. Headers are fetched only for the ids
+ * which are not known, or known in another project.
+ * On these sites, the projects used by jobs are also kept up to date in the background by
+ * {@link IssueMirrorSync}, which makes this a mirror of their issues, see {@link #getMirrored(int)}.
+ * Issues and watermarks are kept in the {@link IssueStore} of the site, so they survive a restart,
+ * but the mirror of a project is trusted only for a while after it has been refreshed.
+ */
+final class IssueStateCache {
+
+    static final int PAGE_SIZE = 100;
+
+    /**
+     * above this many updated issues, the cache of the project is dropped instead of refreshed.
+     */
+    static final int MAX_REFRESH_PAGES = 20;
+
+    /**
+     * above this many unknown ids, one header search is cheaper than fetching them one by one.
+     */
+    static final int MAX_SINGLE_FETCHES = 20;
+
+    /**
+     * the mirror of a project is not used once it has missed a few background refreshes.
+     */
+    static final long MIRROR_TTL = 3 * IssueMirrorSync.PERIOD;
+
+    /**
+     * how many issues the first background refresh of a project reads at most.
+     */
+    static final int MAX_INITIAL_PAGES = 100;
+
+    private static final ConcurrentMap<String, IssueStateCache> SITES = new ConcurrentHashMap<String, IssueStateCache>();
+
+    /**
+     * issues, and per project the most recent last_updated read by a refresh.
+     */
+    private final IssueStore store;
+
+    /**
+     * per project, when its issues were last refreshed, since startup.
+     */
+    private final ConcurrentMap<Integer, Long> refreshed = new ConcurrentHashMap<Integer, Long>();
+
+    private IssueStateCache(final IssueStore store) {
+        this.store = store;
+    }
+
+    static IssueStateCache of(final MantisSite site) {
+        IssueStateCache cache = SITES.get(site.getName());
+        if (cache == null) {
+            final IssueStateCache created = new IssueStateCache(IssueStore.of(site));
+            cache = SITES.putIfAbsent(site.getName(), created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Forgets the issues read from the site, used when it points to another Mantis.
+     */
+    static void forget(final MantisSite site) {
+        SITES.remove(site.getName());
+        try {
+            IssueStore.of(site).clear();
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to clear the issue store of " + site.getName(), e);
+        }
+    }
+
+    /**
+     * Hands the state of the issues targeted at the version to the handler.
+     * @return number of issues found.
+     */
+    int search(final MantisSession session, final int projectId, final String version,
+            final IssueHeaderHandler handler, final PrintStream logger) throws MantisHandlingException {
+        final List<Integer> ids = session.searchIssueIds(projectId, version);
+        final int refreshed = refresh(session, projectId, false);
+
+        final Map<Integer, MantisIssueHeader> found = new HashMap<Integer, MantisIssueHeader>();
+        final List<Integer> unknown = new ArrayList<Integer>();
+        for (final Integer id : ids) {
+            final MantisIssueHeader header = store.get(id);
+            if (header == null || header.getProjectId() != projectId) {
+                unknown.add(id);
+            } else {
+                found.put(id, header);
+            }
+        }
+        Utility.log(logger, Messages.IssueStateCache_Resolved(ids.size(), ids.size() - unknown.size(),
+                unknown.size(), refreshed));
+
+        if (unknown.size() > MAX_SINGLE_FETCHES) {
+            return session.searchIssueHeaders(projectId, version, new IssueHeaderHandler() {
+                public void header(final MantisIssueHeader header) throws MantisHandlingException {
+                    final MantisIssueHeader known = withVersions(header, store.get(header.getId()));
+                    store.put(known);
+                    handler.header(known);
+                }
+            }, logger);
+        }
+        found.putAll(fetch(session, unknown));
+
+        for (final Integer id : ids) {
+            handler.header(found.get(id));
+        }
+        return ids.size();
+    }
+
+    /**
+     * Search results have no versions: they are kept from the stored issue if it has not been updated since.
+     */
+    static MantisIssueHeader withVersions(final MantisIssueHeader header, final MantisIssueHeader stored) {
+        if (header.hasVersions() || stored == null || !stored.hasVersions()
+                || stored.getLastUpdated() != header.getLastUpdated()) {
+            return header;
+        }
+        return new MantisIssueHeader(header.getId(), header.getProjectId(), header.getStatus(), header.getSummary(),
+                header.getLastUpdated(), stored.getTargetVersion(), stored.getFixedInVersion());
+    }
+
+    /**
+     * @return the issue as last read, if its project has been refreshed within {@link #MIRROR_TTL}, else null.
+     */
+    MantisIssueHeader getMirrored(final int id) {
+        final MantisIssueHeader header = store.get(id);
+        if (header == null) {
+            return null;
+        }
+        final Long time = refreshed.get(header.getProjectId());
+        if (time == null || System.currentTimeMillis() - time > MIRROR_TTL) {
+            return null;
+        }
+        return header;
+    }
+
+    /**
+     * Reads the issues of the project updated since the previous refresh.
+     * @param fill whether the first refresh of the project reads all its issues, or only the latest ones.
+     * @return number of issues read.
+     */
+    int refresh(final MantisSession session, final int projectId, final boolean fill) throws MantisHandlingException {
+        final Long watermark = store.getWatermark(projectId);
+        long latest = watermark != null ? watermark : 0;
+        int read = 0;
+        final int maxPages = watermark == null && fill ? MAX_INITIAL_PAGES : MAX_REFRESH_PAGES;
+        for (int page = 1; page <= maxPages; page++) {
+            final List<MantisIssueHeader> headers = session.getProjectIssueHeaders(projectId, page, PAGE_SIZE);
+            boolean done = (watermark == null && (!fill || page == maxPages)) || headers.size() < PAGE_SIZE;
+            for (final MantisIssueHeader header : headers) {
+                // updates within the same second as the watermark are read again
+                if (watermark != null && header.getLastUpdated() < watermark) {
+                    done = true;
+                    break;
+                }
+                store.put(header);
+                latest = Math.max(latest, header.getLastUpdated());
+                read++;
+            }
+            if (done) {
+                store.setWatermark(projectId, latest);
+                refreshed.put(projectId, System.currentTimeMillis());
+                return read;
+            }
+        }
+        // too many updates to follow: forget the project, its issues will be fetched again
+        refreshed.remove(projectId);
+        store.dropProject(projectId);
+        return read;
+    }
+
+    private Map<Integer, MantisIssueHeader> fetch(final MantisSession session, final List<Integer> ids)
+            throws MantisHandlingException {
+        final Map<Integer, MantisIssueHeader> fetched = new HashMap<Integer, MantisIssueHeader>();
+        final List<Future<MantisIssueHeader>> futures = new ArrayList<Future<MantisIssueHeader>>();
+        for (final Integer id : ids) {
+            futures.add(MantisExecutor.get().submit(new Callable<MantisIssueHeader>() {
+                public MantisIssueHeader call() throws MantisHandlingException {
+                    return session.getIssueHeader(id);
+                }
+            }));
+        }
+        try {
+            for (final Future<MantisIssueHeader> future : futures) {
+                final MantisIssueHeader header = MantisExecutor.await(future);
+                store.put(header);
+                fetched.put(header.getId(), header);
+            }
+            return fetched;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MantisHandlingException(e);
+        } finally {
+            for (final Future<MantisIssueHeader> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(IssueStateCache.class.getName());
+}
@@ -0,0 +1,449 @@
+package hudson.plugins.mantis;
+
+import hudson.plugins.mantis.model.MantisIssueHeader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import jenkins.model.Jenkins;
+
+/**
+ * Append-only file keeping the issue headers read from one site, so that
+ * the caches are warm right after a restart. Only the offsets of the live records are kept on
+ * the heap, records are read from a memory mapping of the file, which grows with it. The file is
+ * compacted when most of it is made of records which have been replaced since.
+ * <pre>
+ * record := length(int) type(byte) payload crc32(int)
+ * ISSUE    := id project status(int) lastUpdated(long) summary(utf) [targetVersion(utf) fixedInVersion(utf)]
+ * MARK     := project(int) watermark(long)
+ * DROP     := project(int)
+ * </pre>
+ * A record cut by a crash fails its length or checksum, and the file is truncated before it.
+ * Records of other types, such as the version lists written by earlier releases, are skipped and
+ * dropped by the next compaction.
+ */
+final class IssueStore {
+
+    private static final byte ISSUE = 1;
+
+    private static final byte MARK = 2;
+
+    private static final byte DROP = 3;
+
+    /**
+     * length and checksum around the type and payload.
+     */
+    private static final int FRAME = 8;
+
+    /**
+     * the file is not compacted below this size.
+     */
+    private static final long MIN_COMPACT_SIZE = 1024 * 1024;
+
+    /**
+     * the file is not mapped again until this many bytes have been appended since the mapping.
+     */
+    private static final long MIN_REMAP_SIZE = 256 * 1024;
+
+    private static final ConcurrentMap<String, IssueStore> SITES = new ConcurrentHashMap<String, IssueStore>();
+
+    private final File file;
+
+    private RandomAccessFile raf;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer map;
+
+    /**
+     * bytes of the file, the mapping may cover less.
+     */
+    private long size;
+
+    private final Map<Integer, Long> issues = new HashMap<Integer, Long>();
+
+    private final Map<Integer, Long> watermarks = new HashMap<Integer, Long>();
+
+    /**
+     * bytes of the records still in use.
+     */
+    private long live;
+
+    IssueStore(final File file) throws IOException {
+        this.file = file;
+        open();
+    }
+
+    /**
+     * @return the store of the site, opened on first use.
+     */
+    static IssueStore of(final MantisSite site) {
+        IssueStore store = SITES.get(site.getName());
+        if (store == null) {
+            synchronized (SITES) {
+                store = SITES.get(site.getName());
+                if (store == null) {
+                    store = open(site);
+                    SITES.put(site.getName(), store);
+                }
+            }
+        }
+        return store;
+    }
+
+    private static IssueStore open(final MantisSite site) {
+        final File dir = new File(new File(Jenkins.getInstance().getRootDir(), "mantis"),
+                ReleaseJournal.sanitize(site.getName()));
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Failed to create " + dir);
+            }
+            return new IssueStore(new File(dir, "issues.store"));
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to open the issue store of " + site.getName()
+                    + ", issues will not be kept across restarts", e);
+            try {
+                final File tmp = File.createTempFile("mantis", ".store");
+                tmp.deleteOnExit();
+                return new IssueStore(tmp);
+            } catch (final IOException again) {
+                throw new IllegalStateException(again);
+            }
+        }
+    }
+
+    synchronized MantisIssueHeader get(final int id) {
+        final Long offset = issues.get(id);
+        if (offset == null) {
+            return null;
+        }
+        try {
+            return readIssue(read(offset));
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read issue " + id + " from " + file, e);
+            return null;
+        }
+    }
+
+    synchronized void put(final MantisIssueHeader header) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(header.getId());
+            out.writeInt(header.getProjectId());
+            out.writeInt(header.getStatus());
+            out.writeLong(header.getLastUpdated());
+            out.writeUTF(truncate(header.getSummary()));
+            // records written before the versions were kept end here: absent means unknown
+            if (header.hasVersions()) {
+                out.writeUTF(truncate(header.getTargetVersion()));
+                out.writeUTF(truncate(header.getFixedInVersion()));
+            }
+            replaced(issues.put(header.getId(), append(ISSUE, bytes.toByteArray())));
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to store issue " + header.getId() + " in " + file, e);
+        }
+    }
+
+    synchronized Long getWatermark(final int projectId) {
+        return watermarks.get(projectId);
+    }
+
+    synchronized void setWatermark(final int projectId, final long watermark) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(projectId);
+            out.writeLong(watermark);
+            append(MARK, bytes.toByteArray());
+            watermarks.put(projectId, watermark);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to store the watermark of project " + projectId + " in " + file, e);
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Forgets the issues and the watermark of the project.
+     */
+    synchronized void dropProject(final int projectId) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            new DataOutputStream(bytes).writeInt(projectId);
+            append(DROP, bytes.toByteArray());
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to drop project " + projectId + " from " + file, e);
+        }
+        drop(projectId);
+        compactIfNeeded();
+    }
+
+    /**
+     * Rewrites the file with the live records only.
+     */
+    synchronized void compact() throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        final RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+        try {
+            out.setLength(0);
+            final FileChannel target = out.getChannel();
+            final List<Long> offsets = new ArrayList<Long>(issues.values());
+            for (final long offset : offsets) {
+                target.write(record(offset));
+            }
+            for (final Map.Entry<Integer, Long> mark : watermarks.entrySet()) {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final DataOutputStream data = new DataOutputStream(bytes);
+                data.writeInt(mark.getKey());
+                data.writeLong(mark.getValue());
+                target.write(ByteBuffer.wrap(frame(MARK, bytes.toByteArray())));
+            }
+            target.force(true);
+        } finally {
+            out.close();
+        }
+        close();
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            // the file may still be mapped, on Windows it cannot be replaced then: the store goes on with it
+            if (!tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+            throw e;
+        } finally {
+            open();
+        }
+    }
+
+    /**
+     * Forgets every record.
+     */
+    synchronized void clear() throws IOException {
+        map = null;
+        try {
+            channel.truncate(0);
+        } finally {
+            close();
+            open();
+        }
+    }
+
+    synchronized long getSize() throws IOException {
+        return channel.size();
+    }
+
+    synchronized long getLiveSize() {
+        return live;
+    }
+
+    private void compactIfNeeded() {
+        try {
+            final long size = channel.size();
+            if (size > MIN_COMPACT_SIZE && size > 2 * live) {
+                final long start = System.nanoTime();
+                compact();
+                LOGGER.log(Level.FINE, "Compacted {0} from {1} to {2} bytes in {3} ms", new Object[] {
+                    file, size, channel.size(), (System.nanoTime() - start) / 1000000});
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to compact " + file, e);
+        }
+    }
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        issues.clear();
+        watermarks.clear();
+        live = 0;
+        map = null;
+        size = channel.size();
+        if (size == 0) {
+            return;
+        }
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        long offset = 0;
+        while (offset + FRAME <= size) {
+            final int length = map.getInt((int) offset);
+            if (length <= 0 || offset + length + FRAME > size || !checksumMatches(offset, length)) {
+                break;
+            }
+            replay(offset, map.get((int) offset + 4));
+            offset += length + FRAME;
+        }
+        if (offset < size) {
+            // a record was cut by a crash
+            LOGGER.log(Level.WARNING, "Truncating {0} at {1} of {2} bytes", new Object[] {file, offset, size});
+            map = null;
+            channel.truncate(offset);
+            size = offset;
+            map = size > 0 ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+        }
+    }
+
+    private void close() throws IOException {
+        map = null;
+        raf.close();
+    }
+
+    private void replay(final long offset, final byte type) throws IOException {
+        final int at = (int) offset + 5;
+        switch (type) {
+            case ISSUE:
+                replaced(issues.put(map.getInt(at), offset));
+                live += recordSize(offset);
+                break;
+            case MARK:
+                watermarks.put(map.getInt(at), map.getLong(at + 4));
+                break;
+            case DROP:
+                drop(map.getInt(at));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void drop(final int projectId) {
+        watermarks.remove(projectId);
+        for (final Iterator<Map.Entry<Integer, Long>> it = issues.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<Integer, Long> entry = it.next();
+            // the project follows the length, the type and the id in an issue record
+            if (record(entry.getValue()).getInt(9) == projectId) {
+                live -= recordSize(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    private long append(final byte type, final byte[] payload) throws IOException {
+        final byte[] record = frame(type, payload);
+        final long offset = size;
+        channel.write(ByteBuffer.wrap(record), offset);
+        size += record.length;
+        if (type == ISSUE) {
+            live += record.length;
+        }
+        return offset;
+    }
+
+    private static byte[] frame(final byte type, final byte[] payload) {
+        final ByteBuffer record = ByteBuffer.allocate(payload.length + 1 + FRAME);
+        record.putInt(payload.length + 1);
+        record.put(type);
+        record.put(payload);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, payload.length + 1);
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    private boolean checksumMatches(final long offset, final int length) {
+        final byte[] body = new byte[length];
+        final ByteBuffer view = map.duplicate();
+        view.position((int) offset + 4);
+        view.get(body);
+        final CRC32 crc = new CRC32();
+        crc.update(body);
+        return view.getInt() == (int) crc.getValue();
+    }
+
+    private void replaced(final Long previous) {
+        if (previous != null) {
+            live -= recordSize(previous);
+        }
+    }
+
+    private int recordSize(final long offset) {
+        return record(offset).getInt(0) + FRAME;
+    }
+
+    /**
+     * Records appended since the file was mapped are read from the channel, and the file is mapped
+     * again only once they make up a good part of it: a previous mapping is released by the garbage
+     * collector only, mapping the file on every append would use up the address space.
+     * @return the whole record at the offset, from its length to its checksum.
+     */
+    private ByteBuffer record(final long offset) {
+        final long mapped = map != null ? map.limit() : 0;
+        try {
+            if (offset >= mapped && size - mapped >= Math.max(MIN_REMAP_SIZE, mapped / 2)) {
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            if (map != null && offset < map.limit()) {
+                final ByteBuffer view = map.duplicate();
+                view.position((int) offset);
+                view.limit((int) offset + view.getInt((int) offset) + FRAME);
+                return view.slice();
+            }
+            final ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(length, offset);
+            final ByteBuffer record = ByteBuffer.allocate(length.getInt(0) + FRAME);
+            readFully(record, offset);
+            record.flip();
+            return record;
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void readFully(final ByteBuffer buffer, final long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + file + " at " + (offset + buffer.position()));
+            }
+        }
+    }
+
+    /**
+     * @return the payload of the record at the offset, after its type.
+     */
+    private DataInputStream read(final long offset) {
+        final ByteBuffer view = record(offset);
+        final byte[] payload = new byte[view.getInt(0) - 1];
+        view.position(5);
+        view.get(payload);
+        return new DataInputStream(new ByteArrayInputStream(payload));
+    }
+
+    private static MantisIssueHeader readIssue(final DataInputStream in) throws IOException {
+        final int id = in.readInt();
+        final int projectId = in.readInt();
+        final int status = in.readInt();
+        final long lastUpdated = in.readLong();
+        final String summary = in.readUTF();
+        if (in.available() == 0) {
+            return new MantisIssueHeader(id, projectId, status, summary, lastUpdated);
+        }
+        return new MantisIssueHeader(id, projectId, status, summary, lastUpdated, in.readUTF(), in.readUTF());
+    }
+
+    private static String truncate(final String s) {
+        if (s == null) {
+            return "";
+        }
+        // writeUTF takes at most 64KB, and a character takes at most 3 bytes
+        return s.length() > 20000 ? s.substring(0, 20000) : s;
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(IssueStore.class.getName());
+}
@@ -0,0 +1,109 @@
+package hudson.plugins.mantis;
+
+import hudson.model.Job;
+import hudson.plugins.mantis.soap.SiteThrottle;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread pool used to talk to Mantis in the background or concurrently.
+ * Tasks run for the job of the thread which submitted them, see {@link SiteThrottle#setJob(String)}.
+ */
+public final class MantisExecutor {
+
+    private static final ExecutorService EXECUTOR = new JobThreadPool();
+
+    private MantisExecutor() {
+        // hide default constructor
+    }
+
+    public static ExecutorService get() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Sets the job of the calls made by the current thread, see {@link SiteThrottle}.
+     * @return the previous job, to be restored with {@link #exitJob(String)} once done.
+     */
+    public static String enterJob(final Job<?, ?> job) {
+        return SiteThrottle.setJob(job != null ? job.getFullName() : null);
+    }
+
+    /**
+     * Restores the job of the current thread.
+     * @param previousJob value returned by {@link #enterJob(Job)}.
+     */
+    public static void exitJob(final String previousJob) {
+        SiteThrottle.setJob(previousJob);
+    }
+
+    /**
+     * Waits for the task, unwrapping the {@link MantisHandlingException} it may have thrown.
+     */
+    public static <T> T await(final Future<T> future) throws MantisHandlingException, InterruptedException {
+        try {
+            return future.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof MantisHandlingException) {
+                throw (MantisHandlingException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new MantisHandlingException(cause);
+        }
+    }
+
+    /**
+     * Cached thread pool whose tasks run for the job they were submitted for.
+     */
+    private static final class JobThreadPool extends ThreadPoolExecutor {
+
+        JobThreadPool() {
+            super(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                    new NamingThreadFactory(new DaemonThreadFactory(), "Mantis"));
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+            final String job = SiteThrottle.getJob();
+            return super.newTaskFor(new Callable<T>() {
+                public T call() throws Exception {
+                    final String previous = SiteThrottle.setJob(job);
+                    try {
+                        return callable.call();
+                    } finally {
+                        SiteThrottle.setJob(previous);
+                    }
+                }
+            });
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
+            final String job = SiteThrottle.getJob();
+            return super.newTaskFor(new Runnable() {
+                public void run() {
+                    final String previous = SiteThrottle.setJob(job);
+                    try {
+                        runnable.run();
+                    } finally {
+                        SiteThrottle.setJob(previous);
+                    }
+                }
+            }, value);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package hudson.plugins.mantis;
+
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.plugins.mantis.model.MantisCategory;
+import hudson.plugins.mantis.model.MantisIssue;
+import hudson.plugins.mantis.model.MantisProject;
+import hudson.plugins.mantis.model.MantisViewState;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Pipeline step filing a ticket.
+ * <pre>
+ * def t = mantisFileIssue projectId: 12, category: 'build', summary: "${env.JOB_NAME} failed"
+ * echo "filed ${t.url}"
+ * </pre>
+ */
+public final class MantisFileIssueStep extends AbstractStepImpl {
+
+    private final int projectId;
+
+    private final String category;
+
+    private final String summary;
+
+    private String site;
+
+    private String description;
+
+    private boolean keepTicketPrivate;
+
+    @DataBoundConstructor
+    public MantisFileIssueStep(final int projectId, final String category, final String summary) {
+        this.projectId = projectId;
+        this.category = Util.fixEmptyAndTrim(category);
+        this.summary = Util.fixEmptyAndTrim(summary);
+    }
+
+    public int getProjectId() {
+        return projectId;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    @DataBoundSetter
+    public void setSite(final String site) {
+        this.site = Util.fixEmptyAndTrim(site);
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @DataBoundSetter
+    public void setDescription(final String description) {
+        this.description = description;
+    }
+
+    public boolean isKeepTicketPrivate() {
+        return keepTicketPrivate;
+    }
+
+    @DataBoundSetter
+    public void setKeepTicketPrivate(final boolean keepTicketPrivate) {
+        this.keepTicketPrivate = keepTicketPrivate;
+    }
+
+    /**
+     * Returns id, url and millis.
+     */
+    public static final class Execution extends MantisStepExecution {
+
+        private static final long serialVersionUID = 1L;
+
+        @Inject
+        private transient MantisFileIssueStep step;
+
+        @Override
+        protected Map<String, Object> execute(final Run<?, ?> run, final TaskListener listener)
+                throws Exception {
+            if (step.category == null || step.summary == null) {
+                throw new AbortException(Messages.MantisFileIssueStep_MissingFields());
+            }
+            final MantisSite site = getSite(step.site);
+            final MantisViewState viewState = step.keepTicketPrivate ? MantisViewState.PRIVATE : MantisViewState.PUBLIC;
+            final MantisIssue issue = new MantisIssue(new MantisProject(step.projectId),
+                    new MantisCategory(step.category), step.summary, Util.fixNull(step.description), viewState);
+
+            final long start = System.nanoTime();
+            final int no = site.addIssue(issue);
+            final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Utility.log(listener.getLogger(), "file a ticket #" + no + "(" + site.getIssueLink(no) + ")");
+            run.addAction(new MantisRegisterAction(site, no));
+
+            final Map<String, Object> values = new HashMap<String, Object>();
+            values.put("id", no);
+            values.put("url", site.getIssueLink(no));
+            values.put("millis", millis);
+            return values;
+        }
+    }
+
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "mantisFileIssue";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.MantisFileIssueStep_DisplayName();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package hudson.plugins.mantis;
+
+import hudson.model.Action;
+import hudson.model.Job;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Page of a job listing the builds which referenced, filed or closed an issue,
+ * read from the {@link IssueBuildIndex} of the job.
+ */
+public final class MantisIssueBuildsAction implements Action {
+
+    private final Job<?, ?> job;
+
+    public MantisIssueBuildsAction(final Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    /**
+     * @return the builds which used the issue, most recent first.
+     */
+    public List<Reference> getBuilds(final String id) {
+        final List<Reference> builds = new ArrayList<Reference>();
+        final int issueNo;
+        try {
+            issueNo = Integer.parseInt(id.trim().replaceFirst("^#", ""));
+        } catch (final RuntimeException e) {
+            return builds;
+        }
+        for (final Map.Entry<Integer, IssueBuildIndex.Kind> entry : IssueBuildIndex.of(job).find(issueNo).entrySet()) {
+            builds.add(new Reference(job, entry.getKey(), entry.getValue()));
+        }
+        return builds;
+    }
+
+    public int getIndexedIssues() {
+        return IssueBuildIndex.of(job).size();
+    }
+
+    /**
+     * @return false while the builds completed before the index existed are being added.
+     */
+    public boolean isBackfilled() {
+        return IssueBuildIndex.of(job).isBackfilled();
+    }
+
+    public String getIconFileName() {
+        return "/plugin/mantis/mantis.png";
+    }
+
+    public String getDisplayName() {
+        return Messages.MantisIssueBuildsAction_DisplayName();
+    }
+
+    public String getUrlName() {
+        return "mantis-issues";
+    }
+
+    /**
+     * A build which used an issue, by number so that the build is not loaded.
+     */
+    public static final class Reference {
+
+        private final Job<?, ?> job;
+
+        private final int number;
+
+        private final IssueBuildIndex.Kind kind;
+
+        Reference(final Job<?, ?> job, final int number, final IssueBuildIndex.Kind kind) {
+            this.job = job;
+            this.number = number;
+            this.kind = kind;
+        }
+
+        public Job<?, ?> getJob() {
+            return job;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public String getKind() {
+            return kind.name();
+        }
+
+        public String getUrl() {
+            return job.getUrl() + number + "/";
+        }
+    }
+}
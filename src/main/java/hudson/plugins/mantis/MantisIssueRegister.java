@@ -1,6 +1,7 @@
 package hudson.plugins.mantis;
 
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.Launcher;
 import hudson.Util;
 import hudson.model.AbstractBuild;
@@ -10,19 +11,25 @@ import hudson.model.BuildListener;
 import hudson.model.Result;
 import hudson.plugins.mantis.model.MantisCategory;
 import hudson.plugins.mantis.model.MantisIssue;
+import hudson.plugins.mantis.model.MantisNote;
 import hudson.plugins.mantis.model.MantisProject;
 import hudson.plugins.mantis.model.MantisViewState;
 import hudson.plugins.mantis.scripts.JellyScriptContent;
+import hudson.plugins.mantis.scripts.RenderedContent;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
+import java.io.File;
 import java.io.IOException;
 
 
 import java.io.PrintStream;
+import java.util.Collections;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  * 
@@ -34,14 +41,63 @@ public final class MantisIssueRegister extends Recorder {
     
     private boolean keepTicketPrivate;
     
+    /**
+     * maximum size of the description sent inline, in KB. 0 means default.
+     */
+    private int maxDescriptionSize;
+    
+    /**
+     * what to do when a failure with the same fingerprint happens again.
+     */
+    private String recurrence;
+
+    /**
+     * Ant pattern of the workspace files attached to the ticket.
+     */
+    private String attachArtifacts;
+
+    private boolean attachLog;
+
+    /**
+     * maximum size of an attached file, in KB. 0 means default.
+     */
+    private int maxAttachmentSize;
+    
     public static final String FAILURE = "failure";
     
     public static final String FAILUREORUNSTABL = "failureOrUnstable";
     
-    @DataBoundConstructor
+    /**
+     * Mantis stores descriptions in a TEXT column (64KB), keep some room for the marker.
+     */
+    public static final int DEFAULT_MAX_DESCRIPTION_SIZE = 60;
+    
+    /**
+     * file a new ticket for every failure.
+     */
+    public static final String RECURRENCE_NEW = "new";
+    
+    /**
+     * add a note to the ticket filed for the first failure.
+     */
+    public static final String RECURRENCE_NOTE = "note";
+    
+    /**
+     * only count the occurrences locally.
+     */
+    public static final String RECURRENCE_COUNT = "count";
+    
     public MantisIssueRegister(String threshold, boolean keepTicketPrivate) {
+        this(threshold, keepTicketPrivate, DEFAULT_MAX_DESCRIPTION_SIZE, RECURRENCE_NOTE);
+    }
+    
+    @DataBoundConstructor
+    public MantisIssueRegister(String threshold, boolean keepTicketPrivate, int maxDescriptionSize,
+            String recurrence) {
         this.threshold = Util.fixEmptyAndTrim(threshold);
         this.keepTicketPrivate = keepTicketPrivate;
+        this.maxDescriptionSize = maxDescriptionSize;
+        this.recurrence = Util.fixEmptyAndTrim(recurrence);
     }
     
     public String getThreshold() {
@@ -51,6 +107,51 @@ public final class MantisIssueRegister extends Recorder {
     public boolean isKeepTicketPrivate() {
         return keepTicketPrivate;
     }
+
+    public int getMaxDescriptionSize() {
+        if (maxDescriptionSize <= 0) {
+            return DEFAULT_MAX_DESCRIPTION_SIZE;
+        }
+        return maxDescriptionSize;
+    }
+
+    public String getRecurrence() {
+        if (recurrence == null) {
+            return RECURRENCE_NOTE;
+        }
+        return recurrence;
+    }
+
+    public String getAttachArtifacts() {
+        return attachArtifacts;
+    }
+
+    @DataBoundSetter
+    public void setAttachArtifacts(final String attachArtifacts) {
+        this.attachArtifacts = Util.fixEmptyAndTrim(attachArtifacts);
+    }
+
+    public boolean isAttachLog() {
+        return attachLog;
+    }
+
+    @DataBoundSetter
+    public void setAttachLog(final boolean attachLog) {
+        this.attachLog = attachLog;
+    }
+
+    public int getMaxAttachmentSize() {
+        return maxAttachmentSize > 0 ? maxAttachmentSize : BuildAttachments.DEFAULT_MAX_SIZE;
+    }
+
+    @DataBoundSetter
+    public void setMaxAttachmentSize(final int maxAttachmentSize) {
+        this.maxAttachmentSize = Math.max(0, maxAttachmentSize);
+    }
+
+    BuildAttachments getAttachments() {
+        return new BuildAttachments(attachArtifacts, attachLog, maxAttachmentSize);
+    }
     
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
@@ -60,10 +161,23 @@ public final class MantisIssueRegister extends Recorder {
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
             throws InterruptedException, IOException {
+        final String previousJob = MantisExecutor.enterJob(build.getParent());
+        try {
+            return perform(build, listener);
+        } finally {
+            MantisExecutor.exitJob(previousJob);
+        }
+    }
+
+    private boolean perform(AbstractBuild<?, ?> build, BuildListener listener)
+            throws InterruptedException, IOException {
         
         final PrintStream logger = listener.getLogger();
         
         if (!canProcess(build)) {
+            if (build.getResult() == Result.SUCCESS) {
+                FailureFingerprintIndex.get().resolve(build.getParent().getFullName());
+            }
             return true;
         }
         
@@ -74,26 +188,146 @@ public final class MantisIssueRegister extends Recorder {
             return true;
         }
         
-        int no;
-        MantisIssue issue = createIssue(build, listener);
-        if (issue == null) {
+        MantisProjectProperty mpp = MantisProjectProperty.get(build);
+        if (mpp.getProjectId() == MantisProject.NONE || MantisCategory.NONE.equals(mpp.getCategory())) {
+            Utility.log(logger, "Neither project nor category selected.");
             Utility.log(logger, "skipping file a ticket ...");
             return true;
         }
-        try {
-            no = site.addIssue(issue);
-            Utility.log(logger, "file a ticket #" + no + "(" + getIssueURL(site, no) + ")");
-        } catch (MantisHandlingException e) {
-            Utility.log(logger, e.toString());
-            build.setResult(Result.FAILURE);
+        
+        if (RECURRENCE_NEW.equals(getRecurrence())) {
+            int no = fileIssue(build, site, mpp, logger);
+            if (no > 0) {
+                attachFiles(build, site, no, logger);
+                build.getActions().add(new MantisRegisterAction(site, no));
+            }
             return true;
         }
         
+        // the lookup and the filing are done at once, or two builds failing together file two tickets
+        String fingerprint = FailureFingerprint.compute(build);
+        FailureFingerprintIndex index = FailureFingerprintIndex.get();
+        FailureFingerprintIndex.Entry entry;
+        int no;
+        FailureFingerprintIndex.lock(site, fingerprint);
+        try {
+            entry = index.find(site, fingerprint);
+            if (entry != null && isResolved(site, entry.getIssueNo())) {
+                Utility.log(logger, Messages.MantisIssueRegister_RecurrenceResolved(entry.getIssueNo()));
+                index.forget(site, fingerprint);
+                entry = null;
+            }
+            if (entry != null) {
+                entry = index.recur(site, fingerprint, build.getNumber());
+                no = entry.getIssueNo();
+                handleRecurrence(build, site, entry, logger);
+            } else {
+                no = fileIssue(build, site, mpp, logger);
+                if (no > 0) {
+                    index.register(site, fingerprint, build.getParent().getFullName(), no, build.getNumber());
+                }
+            }
+        } finally {
+            FailureFingerprintIndex.unlock(site, fingerprint);
+        }
+        if (no <= 0) {
+            return true;
+        }
+        if (entry == null || RECURRENCE_NOTE.equals(getRecurrence())) {
+            attachFiles(build, site, no, logger);
+        }
         build.getActions().add(new MantisRegisterAction(site, no));
         
         return true;
     }
     
+    /**
+     * @return the number of the ticket filed, or 0 if it could not be filed.
+     */
+    private int fileIssue(AbstractBuild<?, ?> build, MantisSite site, MantisProjectProperty mpp,
+            PrintStream logger) throws InterruptedException, IOException {
+        int no;
+        RenderedContent description = new JellyScriptContent().render(
+                build, build.getResult(), getMaxDescriptionSize() * 1024);
+        try {
+            Utility.log(logger, Messages.MantisIssueRegister_RenderedDescription(
+                    description.getRenderedSize(), description.getRenderMillis()));
+            MantisIssue issue = createIssue(build, mpp, description.getText());
+            try {
+                no = site.addIssue(issue);
+                Utility.log(logger, "file a ticket #" + no + "(" + getIssueURL(site, no) + ")");
+            } catch (MantisHandlingException e) {
+                Utility.log(logger, e.toString());
+                build.setResult(Result.FAILURE);
+                return 0;
+            }
+            if (description.isTruncated()) {
+                attachDescription(site, no, description, logger);
+            }
+        } finally {
+            description.dispose();
+        }
+        return no;
+    }
+    
+    /**
+     * A ticket which cannot be read is taken as still open.
+     * @return true if the ticket has been resolved or closed in Mantis since it was filed.
+     */
+    private boolean isResolved(MantisSite site, int no) {
+        try {
+            return site.getIssueHeader(no).getStatus() >= ReleasePlanner.RESOLVED;
+        } catch (MantisHandlingException e) {
+            LOGGER.log(Level.FINE, "Failed to read the status of ticket #" + no, e);
+            return false;
+        }
+    }
+    
+    private void handleRecurrence(AbstractBuild<?, ?> build, MantisSite site, 
+            FailureFingerprintIndex.Entry entry, PrintStream logger) {
+        int no = entry.getIssueNo();
+        if (RECURRENCE_COUNT.equals(getRecurrence())) {
+            Utility.log(logger, Messages.MantisIssueRegister_RecurrenceCounted(no, entry.getCount()));
+            return;
+        }
+        String text = Messages.MantisIssueRegister_RecurrenceNote(build.getParent().getFullName(),
+                build.getNumber(), build.getResult(), entry.getCount());
+        NoteCoalescer notes = NoteCoalescer.of(site);
+        notes.reportFailures(logger);
+        try {
+            if (notes.addNote(no, new MantisNote(text, viewState()))) {
+                Utility.log(logger, Messages.MantisIssueRegister_RecurrenceQueued(no, site.getNoteWindow()));
+            } else {
+                Utility.log(logger, Messages.MantisIssueRegister_RecurrenceNoted(no, entry.getCount()));
+            }
+        } catch (MantisHandlingException e) {
+            Utility.log(logger, Messages.Updater_FailedToAddNote(no, e.getMessage()));
+            LOGGER.log(Level.WARNING, Messages.Updater_FailedToAddNote_StarckTrace(no), e);
+        }
+    }
+    
+    private void attachFiles(AbstractBuild<?, ?> build, MantisSite site, int no, PrintStream logger)
+            throws InterruptedException {
+        BuildAttachments attachments = getAttachments();
+        if (!attachments.isEmpty()) {
+            attachments.attach(site, build, Collections.singletonList(no), logger);
+        }
+    }
+    
+    private void attachDescription(MantisSite site, int no, RenderedContent description, PrintStream logger)
+            throws InterruptedException {
+        try {
+            File overflow = description.getOverflowFile();
+            site.addAttachment(no, RenderedContent.OVERFLOW_ATTACHMENT_NAME, "text/plain", new FilePath(overflow),
+                    0, overflow.length());
+            Utility.log(logger, Messages.MantisIssueRegister_AttachedDescription(
+                    RenderedContent.OVERFLOW_ATTACHMENT_NAME, no));
+        } catch (MantisHandlingException e) {
+            Utility.log(logger, Messages.MantisIssueRegister_FailedToAttachDescription(no, e.getMessage()));
+            LOGGER.log(Level.WARNING, null, e);
+        }
+    }
+    
     private boolean canProcess(AbstractBuild<?, ?> build) {
         Result result = build.getResult();
         if (FAILURE.equals(threshold) && result.isBetterThan(Result.FAILURE)) {
@@ -108,27 +342,21 @@ public final class MantisIssueRegister extends Recorder {
         return site.getIssueLink(no);
     }
     
-    private MantisIssue createIssue(AbstractBuild<?, ?> build, BuildListener listener) 
-            throws IOException, InterruptedException {
-        MantisProjectProperty mpp = MantisProjectProperty.get(build);
-        int projectId = mpp.getProjectId();
-        String categoryName = mpp.getCategory();
-        if (projectId == MantisProject.NONE || MantisCategory.NONE.equals(categoryName)) {
-            Utility.log(listener.getLogger(), "Neither project nor category selected.");
-            return null;
-        }
-        
-        MantisProject project = new MantisProject(projectId);
-        MantisCategory category = new MantisCategory(categoryName);
+    private MantisIssue createIssue(AbstractBuild<?, ?> build, MantisProjectProperty mpp, String description) {
+        MantisProject project = new MantisProject(mpp.getProjectId());
+        MantisCategory category = new MantisCategory(mpp.getCategory());
         String summary = summary(build);
-        String description = new JellyScriptContent().getContent(build, build.getResult());
+        return new MantisIssue(project, category, summary, description, viewState());
+    }
+    
+    private MantisViewState viewState() {
         MantisViewState viewState;
         if (isKeepTicketPrivate()) {
             viewState = MantisViewState.PUBLIC;
         } else {
             viewState = MantisViewState.PRIVATE;
         }
-        return new MantisIssue(project, category, summary, description, viewState);
+        return viewState;
     }
     
     private String summary(AbstractBuild<?, ?> build) {
@@ -2,10 +2,12 @@ package hudson.plugins.mantis;
 
 import hudson.Extension;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
 
+import hudson.plugins.mantis.changelog.ChangeLogFormat;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
@@ -17,6 +19,7 @@ import java.util.logging.Logger;
 import net.sf.json.JSONObject;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.StaplerRequest;
 
 /**
@@ -29,11 +32,48 @@ public final class MantisIssueUpdater extends Recorder {
     private final boolean keepNotePrivate;
 
     private final boolean recordChangelog;
-    
-    @DataBoundConstructor
+
+    private final String changelogFormat;
+
+    /**
+     * size of the changelog file above which it is rotated, in KB. 0 means never.
+     */
+    private final int changelogMaxSize;
+
+    /**
+     * only compute and log the release plan, do not change anything on Mantis.
+     */
+    private final boolean dryRun;
+
+    /**
+     * send the changesets of the build to the issues they reference, one check-in per issue.
+     */
+    private boolean checkin;
+
+    /**
+     * Ant pattern of the workspace files attached to the released issues.
+     */
+    private String attachArtifacts;
+
+    private boolean attachLog;
+
+    /**
+     * maximum size of an attached file, in KB. 0 means default.
+     */
+    private int maxAttachmentSize;
+
     public MantisIssueUpdater(final boolean keepNotePrivate, final boolean recordChangelog) {
+        this(keepNotePrivate, recordChangelog, null, 0, false);
+    }
+
+    @DataBoundConstructor
+    public MantisIssueUpdater(final boolean keepNotePrivate, final boolean recordChangelog,
+            final String changelogFormat, final int changelogMaxSize, final boolean dryRun) {
         this.keepNotePrivate = keepNotePrivate;
         this.recordChangelog = recordChangelog;
+        this.changelogFormat = changelogFormat;
+        this.changelogMaxSize = Math.max(0, changelogMaxSize);
+        this.dryRun = dryRun;
     }
 
     public boolean isKeepNotePrivate() {
@@ -44,6 +84,58 @@ public final class MantisIssueUpdater extends Recorder {
         return recordChangelog;
     }
 
+    public ChangeLogFormat getChangelogFormat() {
+        return ChangeLogFormat.getFormatSafely(changelogFormat, ChangeLogFormat.TEXT);
+    }
+
+    public int getChangelogMaxSize() {
+        return changelogMaxSize;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public boolean isCheckin() {
+        return checkin;
+    }
+
+    @DataBoundSetter
+    public void setCheckin(final boolean checkin) {
+        this.checkin = checkin;
+    }
+
+    public String getAttachArtifacts() {
+        return attachArtifacts;
+    }
+
+    @DataBoundSetter
+    public void setAttachArtifacts(final String attachArtifacts) {
+        this.attachArtifacts = Util.fixEmptyAndTrim(attachArtifacts);
+    }
+
+    public boolean isAttachLog() {
+        return attachLog;
+    }
+
+    @DataBoundSetter
+    public void setAttachLog(final boolean attachLog) {
+        this.attachLog = attachLog;
+    }
+
+    public int getMaxAttachmentSize() {
+        return maxAttachmentSize > 0 ? maxAttachmentSize : BuildAttachments.DEFAULT_MAX_SIZE;
+    }
+
+    @DataBoundSetter
+    public void setMaxAttachmentSize(final int maxAttachmentSize) {
+        this.maxAttachmentSize = Math.max(0, maxAttachmentSize);
+    }
+
+    BuildAttachments getAttachments() {
+        return new BuildAttachments(attachArtifacts, attachLog, maxAttachmentSize);
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
@@ -53,10 +145,13 @@ public final class MantisIssueUpdater extends Recorder {
     public boolean perform(final AbstractBuild<?, ?> build, final Launcher launcher,
             final BuildListener listener) throws InterruptedException, IOException {
         final Updater updater = new Updater(this);
+        final String previousJob = MantisExecutor.enterJob(build.getParent());
         try {
             return updater.perform(build, listener);
         } catch (MantisHandlingException ex) {
             Logger.getLogger(MantisIssueUpdater.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            MantisExecutor.exitJob(previousJob);
         }
         return false;
     }
@@ -83,6 +178,10 @@ public final class MantisIssueUpdater extends Recorder {
             return true;
         }
 
+        public ChangeLogFormat[] getChangelogFormats() {
+            return ChangeLogFormat.values();
+        }
+
         @Override
         public Publisher newInstance(final StaplerRequest req, final JSONObject formData) {
             return req.bindJSON(MantisIssueUpdater.class, formData);
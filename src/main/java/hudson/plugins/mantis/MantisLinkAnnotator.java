@@ -80,10 +80,13 @@ public final class MantisLinkAnnotator extends ChangeLogAnnotator {
     private MantisIssue getIssue(final AbstractBuild<?, ?> build, final int id) {
         final MantisSite site = MantisSite.get(build.getProject());
         MantisIssue issue;
+        final String previousJob = MantisExecutor.enterJob(build.getParent());
         try {
             issue = site.getIssue(id);
         } catch (final MantisHandlingException e) {
             issue = null;
+        } finally {
+            MantisExecutor.exitJob(previousJob);
         }
         return issue;
     }
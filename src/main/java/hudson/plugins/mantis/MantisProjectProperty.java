@@ -5,6 +5,7 @@ import hudson.Util;
 import hudson.matrix.MatrixRun;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
+import hudson.model.Action;
 import hudson.model.Descriptor.FormException;
 import hudson.model.Hudson;
 import hudson.model.Job;
@@ -13,6 +14,7 @@ import hudson.model.JobPropertyDescriptor;
 import hudson.plugins.mantis.MantisSite.MantisVersion;
 import hudson.plugins.mantis.model.MantisCategory;
 import hudson.plugins.mantis.model.MantisProject;
+import hudson.plugins.mantis.soap.MantisTransport;
 import hudson.util.CopyOnWriteList;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
@@ -20,13 +22,21 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 import javax.servlet.ServletException;
+import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
@@ -55,6 +65,34 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
     private final boolean linkEnabled;
     private String versionPattern;
     private Pattern versionPatternP;
+    private List<MantisSiteTarget> additionalSites;
+    private transient volatile ResolvedSite resolvedSite;
+
+    /**
+     * @return ids of the projects used by the jobs, by site name.
+     */
+    static Map<String, Set<Integer>> getUsedProjects() {
+        final Map<String, Set<Integer>> used = new HashMap<String, Set<Integer>>();
+        for (final AbstractProject<?, ?> job : Jenkins.getInstance().getAllItems(AbstractProject.class)) {
+            final MantisProjectProperty mpp = job.getProperty(MantisProjectProperty.class);
+            if (mpp == null) {
+                continue;
+            }
+            for (final MantisSiteTarget target : mpp.getSiteTargets()) {
+                final MantisSite site = target.getSite();
+                if (site == null || target.getProjectId() == MantisProject.NONE) {
+                    continue;
+                }
+                Set<Integer> ids = used.get(site.getName());
+                if (ids == null) {
+                    ids = new HashSet<Integer>();
+                    used.put(site.getName(), ids);
+                }
+                ids.add(target.getProjectId());
+            }
+        }
+        return used;
+    }
 
     public static MantisProjectProperty get(AbstractBuild<?, ?> build) {
         if (build == null) {
@@ -134,17 +172,53 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
         return linkEnabled;
     }
 
-    public MantisSite getSite() {
-        final MantisSite[] sites = DESCRIPTOR.getSites();
-        if (siteName == null && sites.length > 0) {
-            return sites[0];
+    @Override
+    public Collection<? extends Action> getJobActions(final AbstractProject<?, ?> job) {
+        return Collections.singletonList(new MantisIssueBuildsAction(job));
+    }
+
+    /**
+     * @return sites released to in addition to the main one.
+     */
+    public List<MantisSiteTarget> getAdditionalSites() {
+        if (additionalSites == null) {
+            return Collections.emptyList();
         }
-        for (final MantisSite site : sites) {
-            if (site.getName().equals(siteName)) {
-                return site;
+        return Collections.unmodifiableList(additionalSites);
+    }
+
+    @DataBoundSetter
+    public void setAdditionalSites(final List<MantisSiteTarget> additionalSites) {
+        this.additionalSites = additionalSites != null && !additionalSites.isEmpty()
+                ? new ArrayList<MantisSiteTarget>(additionalSites) : null;
+    }
+
+    /**
+     * @return every site the job releases to, the main one first.
+     */
+    public List<MantisSiteTarget> getSiteTargets() {
+        final List<MantisSiteTarget> targets = new ArrayList<MantisSiteTarget>();
+        targets.add(new MantisSiteTarget(siteName, projectId));
+        targets.addAll(getAdditionalSites());
+        return targets;
+    }
+
+    public MantisSite getSite() {
+        // read the generation first, so that a concurrent reconfiguration
+        // only causes one more lookup later.
+        final int generation = DESCRIPTOR.getSiteGeneration();
+        ResolvedSite resolved = resolvedSite;
+        if (resolved == null || resolved.generation != generation) {
+            final MantisSite site;
+            if (siteName == null) {
+                site = DESCRIPTOR.getDefaultSite();
+            } else {
+                site = DESCRIPTOR.getSite(siteName);
             }
+            resolved = new ResolvedSite(generation, site);
+            resolvedSite = resolved;
         }
-        return null;
+        return resolved.site;
     }
     
     public String getVersionPattern() {
@@ -152,13 +226,28 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
     }
 
     private String defaultSiteName() {
-        final MantisSite[] sites = DESCRIPTOR.getSites();
-        if (sites.length > 0) {
-            return sites[0].getName();
+        final MantisSite site = DESCRIPTOR.getDefaultSite();
+        if (site != null) {
+            return site.getName();
         }
         return null;
     }
 
+    /**
+     * Site resolved for a given generation of the site configuration.
+     */
+    private static final class ResolvedSite {
+
+        private final int generation;
+
+        private final MantisSite site;
+
+        ResolvedSite(final int generation, final MantisSite site) {
+            this.generation = generation;
+            this.site = site;
+        }
+    }
+
     private Pattern createRegexp(final String p) {
         final StringBuffer buf = new StringBuffer();
         buf.append("(?<=");
@@ -187,9 +276,15 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
 
         private final CopyOnWriteList<MantisSite> sites = new CopyOnWriteList<MantisSite>();
 
+        /**
+         * immutable name -> site index, replaced as a whole whenever sites change.
+         */
+        private transient volatile SiteIndex siteIndex = SiteIndex.EMPTY;
+
         public DescriptorImpl() {
             super(MantisProjectProperty.class);
             load();
+            reindex();
         }
 
         @SuppressWarnings("unchecked")
@@ -209,12 +304,50 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
         
         void addSite(MantisSite site) {
             sites.add(site);
+            reindex();
+        }
+
+        /**
+         * @return the site with the given name, or null.
+         */
+        public MantisSite getSite(String name) {
+            return siteIndex.byName.get(name);
+        }
+
+        /**
+         * @return the first configured site, or null.
+         */
+        public MantisSite getDefaultSite() {
+            return siteIndex.first;
+        }
+
+        public int getSiteCount() {
+            return siteIndex.count;
+        }
+
+        /**
+         * @return a number which changes every time the sites are reconfigured.
+         */
+        public int getSiteGeneration() {
+            return siteIndex.generation;
+        }
+
+        private synchronized void reindex() {
+            siteIndex = new SiteIndex(sites.getView(), siteIndex.generation + 1);
         }
 
         public MantisVersion[] getMantisVersions() {
             return MantisSite.MantisVersion.values();
         }
 
+        public List<MantisTransport> getTransports() {
+            return MantisTransport.all();
+        }
+
+        public MantisSite.Compression[] getCompressions() {
+            return MantisSite.Compression.values();
+        }
+
         @Override
         public JobProperty<?> newInstance(final StaplerRequest req, final JSONObject formData) throws FormException {
             MantisProjectProperty mpp = req.bindJSON(MantisProjectProperty.class, formData);
@@ -226,7 +359,18 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
 
         @Override
         public boolean configure(final StaplerRequest req, final JSONObject formData) {
+            final MantisSite[] previous = getSites();
             sites.replaceBy(req.bindParametersToList(MantisSite.class, "m."));
+            reindex();
+            MetadataCache.clearAll();
+            for (final MantisSite site : previous) {
+                final MantisSite now = getSite(site.getName());
+                // the issues read from another Mantis must not be served for this one
+                if (now == null || !String.valueOf(now.getUrl()).equals(String.valueOf(site.getUrl()))) {
+                    IssueStateCache.forget(site);
+                    SingleFlight.forget(site);
+                }
+            }
             save();
             return true;
         }
@@ -243,13 +387,7 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
             ListBoxModel model = new ListBoxModel();
             model.add("-", String.valueOf(MantisProject.NONE));
 
-            MantisSite site = null;
-            for (final MantisSite s : sites) {
-                if (s.getName().equals(siteName)) {
-                    site = s;
-                    break;
-                }
-            }
+            MantisSite site = getSite(siteName);
             if (site == null) {
                 return model;
             }
@@ -306,13 +444,7 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
                 return model;
             }
 
-            MantisSite site = null;
-            for (final MantisSite s : sites) {
-                if (s.getName().equals(siteName)) {
-                    site = s;
-                    break;
-                }
-            }
+            MantisSite site = getSite(siteName);
             if (site == null) {
                 return model;
             }
@@ -329,6 +461,32 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
             return model;
         }
 
+        private static final class SiteIndex {
+
+            private static final SiteIndex EMPTY = new SiteIndex(Collections.<MantisSite>emptyList(), 0);
+
+            private final Map<String, MantisSite> byName;
+
+            private final MantisSite first;
+
+            private final int count;
+
+            private final int generation;
+
+            SiteIndex(List<MantisSite> sites, int generation) {
+                Map<String, MantisSite> map = new HashMap<String, MantisSite>();
+                for (MantisSite site : sites) {
+                    if (!map.containsKey(site.getName())) {
+                        map.put(site.getName(), site);
+                    }
+                }
+                this.byName = Collections.unmodifiableMap(map);
+                this.first = sites.isEmpty() ? null : sites.get(0);
+                this.count = sites.size();
+                this.generation = generation;
+            }
+        }
+
         public FormValidation doCheckRequired(@QueryParameter String value) {
             return FormValidation.validateRequired(value);
         }
@@ -337,7 +495,11 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
                 @QueryParameter("m.url") String url, @QueryParameter("m.version") String version, 
                 @QueryParameter("m.userName") String userName, @QueryParameter("m.password") String password, 
                 @QueryParameter("m.basicUserName") String basicUserName, 
-                @QueryParameter("m.basicPassword") String basicPassword) 
+                @QueryParameter("m.basicPassword") String basicPassword,
+                @QueryParameter("m.transport") String transport,
+                @QueryParameter("m.compression") String compression,
+                @QueryParameter("m.leanEncoding") boolean leanEncoding,
+                @QueryParameter("m.idSearch") boolean idSearch)
                 throws IOException, ServletException {
             // only administrator allowed
             Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
@@ -355,7 +517,8 @@ public final class MantisProjectProperty extends JobProperty<AbstractProject<?,
             MantisVersion v = MantisVersion.getVersionSafely(version, MantisVersion.V120);
 
             final MantisSite site = new MantisSite(
-                    new URL(url), v.name(), userName, password, basicUserName, basicPassword);
+                    new URL(url), v.name(), userName, password, basicUserName, basicPassword,
+                    transport, compression, leanEncoding, idSearch, 0);
             if (!site.isConnect()) {
                 return FormValidation.error(Messages.MantisProjectProperty_UnableToLogin());
             }
@@ -0,0 +1,153 @@
+package hudson.plugins.mantis;
+
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.plugins.mantis.model.MantisProjectVersion;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Pipeline step creating a version, the same way {@link MantisVersionRegister} does.
+ * <pre>
+ * def v = mantisRegisterVersion projectId: 12, version: '1.3.0'
+ * </pre>
+ */
+public final class MantisRegisterVersionStep extends AbstractStepImpl {
+
+    private final int projectId;
+
+    private final String version;
+
+    private String site;
+
+    private String description;
+
+    private boolean released;
+
+    private boolean obsoletePrevious;
+
+    @DataBoundConstructor
+    public MantisRegisterVersionStep(final int projectId, final String version) {
+        this.projectId = projectId;
+        this.version = Util.fixEmptyAndTrim(version);
+    }
+
+    public int getProjectId() {
+        return projectId;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    @DataBoundSetter
+    public void setSite(final String site) {
+        this.site = Util.fixEmptyAndTrim(site);
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @DataBoundSetter
+    public void setDescription(final String description) {
+        this.description = description;
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    @DataBoundSetter
+    public void setReleased(final boolean released) {
+        this.released = released;
+    }
+
+    public boolean isObsoletePrevious() {
+        return obsoletePrevious;
+    }
+
+    @DataBoundSetter
+    public void setObsoletePrevious(final boolean obsoletePrevious) {
+        this.obsoletePrevious = obsoletePrevious;
+    }
+
+    /**
+     * Returns id, version, obsoleted (id of the version made obsolete, if any) and millis.
+     */
+    public static final class Execution extends MantisStepExecution {
+
+        private static final long serialVersionUID = 1L;
+
+        @Inject
+        private transient MantisRegisterVersionStep step;
+
+        @Override
+        protected Map<String, Object> execute(final Run<?, ?> run, final TaskListener listener)
+                throws Exception {
+            if (step.version == null) {
+                throw new AbortException(Messages.MantisReleaseStep_NoVersion());
+            }
+            final PrintStream logger = listener.getLogger();
+            final MantisSite site = getSite(step.site);
+            final String description = step.description != null
+                    ? step.description : Messages.MantisVersionRegister_VersionDescription();
+
+            final long start = System.nanoTime();
+            final MantisProjectVersion cv = site.createProjectVersion(new MantisProjectVersion(
+                    BigInteger.valueOf(step.projectId), null, step.version, description, step.released));
+            Utility.log(logger, "created a version: " + cv.toString());
+
+            final Map<String, Object> values = new HashMap<String, Object>();
+            values.put("id", cv.getId().intValue());
+            values.put("version", step.version);
+            if (step.obsoletePrevious) {
+                final MantisProjectVersion previous = site.getLatestNotObsoleteProjectVersion(cv);
+                if (previous == null) {
+                    Utility.log(logger, "cannot find previous released and not obsolete version.");
+                } else {
+                    previous.setObsolete(true);
+                    final boolean resp = site.updateProjectVersion(previous);
+                    Utility.log(logger, "update of version to obsolete " + previous + " done with result: " + resp);
+                    values.put("obsoleted", previous.getId().intValue());
+                }
+            }
+            values.put("millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            run.addAction(new MantisVersionRegisterAction(site, cv.getId()));
+            return values;
+        }
+    }
+
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "mantisRegisterVersion";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.MantisRegisterVersionStep_DisplayName();
+        }
+    }
+}
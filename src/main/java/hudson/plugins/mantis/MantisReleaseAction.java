@@ -0,0 +1,141 @@
+package hudson.plugins.mantis;
+
+import hudson.model.Action;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of the release of a Mantis version by a build.
+ */
+public final class MantisReleaseAction implements Action {
+
+    /**
+     * the site released to, when the job releases to several sites.
+     */
+    private final String siteName;
+
+    private final String version;
+
+    private final long preflightMillis;
+
+    private boolean dryRun;
+
+    private boolean versionReleased;
+
+    private List<Integer> closedIssues = new ArrayList<Integer>();
+
+    private List<Integer> failedIssues = new ArrayList<Integer>();
+
+    private List<Integer> resumedIssues = new ArrayList<Integer>();
+
+    private List<Integer> skippedIssues = new ArrayList<Integer>();
+
+    private long applyMillis;
+
+    public MantisReleaseAction(final String version, final long preflightMillis) {
+        this(null, version, preflightMillis);
+    }
+
+    public MantisReleaseAction(final String siteName, final String version, final long preflightMillis) {
+        this.siteName = siteName;
+        this.version = version;
+        this.preflightMillis = preflightMillis;
+    }
+
+    public String getSiteName() {
+        return siteName;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return time spent in the read-only checks run before releasing.
+     */
+    public long getPreflightMillis() {
+        return preflightMillis;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public boolean isVersionReleased() {
+        return versionReleased;
+    }
+
+    public List<Integer> getClosedIssues() {
+        return Collections.unmodifiableList(closedIssues);
+    }
+
+    public List<Integer> getFailedIssues() {
+        return Collections.unmodifiableList(failedIssues);
+    }
+
+    /**
+     * @return issues closed by a previous, interrupted run of the same release.
+     */
+    public List<Integer> getResumedIssues() {
+        return Collections.unmodifiableList(resumedIssues);
+    }
+
+    /**
+     * @return issues which were already closed and fixed in the version, left untouched.
+     */
+    public List<Integer> getSkippedIssues() {
+        return Collections.unmodifiableList(skippedIssues);
+    }
+
+    /**
+     * @return time spent applying the release plan.
+     */
+    public long getApplyMillis() {
+        return applyMillis;
+    }
+
+    void dryRun() {
+        this.dryRun = true;
+    }
+
+    void applied(final ReleaseResult result) {
+        this.versionReleased = result.isVersionReleased();
+        this.closedIssues = new ArrayList<Integer>(result.getClosedIssues());
+        this.failedIssues = new ArrayList<Integer>(result.getFailedIssues());
+        this.resumedIssues = new ArrayList<Integer>(result.getResumedIssues());
+        this.skippedIssues = new ArrayList<Integer>(result.getSkippedIssues());
+        this.applyMillis = result.getApplyMillis();
+    }
+
+    protected Object readResolve() {
+        if (closedIssues == null) {
+            closedIssues = new ArrayList<Integer>();
+        }
+        if (failedIssues == null) {
+            failedIssues = new ArrayList<Integer>();
+        }
+        if (resumedIssues == null) {
+            resumedIssues = new ArrayList<Integer>();
+        }
+        if (skippedIssues == null) {
+            skippedIssues = new ArrayList<Integer>();
+        }
+        return this;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "";
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
@@ -0,0 +1,179 @@
+package hudson.plugins.mantis;
+
+import com.google.inject.Inject;
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+/**
+ * Pipeline step releasing a version: closes its issues, then releases the version,
+ * the same way {@link MantisIssueUpdater} does for freestyle jobs.
+ * <pre>
+ * def r = mantisRelease projectId: 12, version: '1.2.0'
+ * echo "closed ${r.closed}"
+ * </pre>
+ */
+public final class MantisReleaseStep extends AbstractStepImpl {
+
+    private final int projectId;
+
+    private final String version;
+
+    private String site;
+
+    private String description;
+
+    private boolean keepNotePrivate;
+
+    private boolean dryRun;
+
+    @DataBoundConstructor
+    public MantisReleaseStep(final int projectId, final String version) {
+        this.projectId = projectId;
+        this.version = Util.fixEmptyAndTrim(version);
+    }
+
+    public int getProjectId() {
+        return projectId;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    @DataBoundSetter
+    public void setSite(final String site) {
+        this.site = Util.fixEmptyAndTrim(site);
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @DataBoundSetter
+    public void setDescription(final String description) {
+        this.description = description;
+    }
+
+    public boolean isKeepNotePrivate() {
+        return keepNotePrivate;
+    }
+
+    @DataBoundSetter
+    public void setKeepNotePrivate(final boolean keepNotePrivate) {
+        this.keepNotePrivate = keepNotePrivate;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    @DataBoundSetter
+    public void setDryRun(final boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Returns version, versionId, dryRun, released, closed, skipped, failed,
+     * preflightMillis and applyMillis.
+     */
+    public static final class Execution extends MantisStepExecution {
+
+        private static final long serialVersionUID = 1L;
+
+        @Inject
+        private transient MantisReleaseStep step;
+
+        @Override
+        protected Map<String, Object> execute(final Run<?, ?> run, final TaskListener listener)
+                throws Exception {
+            if (step.version == null) {
+                throw new AbortException(Messages.MantisReleaseStep_NoVersion());
+            }
+            final PrintStream logger = listener.getLogger();
+            final MantisSite site = getSite(step.site);
+
+            final ReleasePlan plan = new ReleasePlanner(site).plan(step.projectId, step.version,
+                    Util.fixNull(step.description), step.keepNotePrivate, logger);
+            Utility.log(logger, Messages.Updater_Preflight(plan.getPreflightMillis()));
+            final MantisReleaseAction action = new MantisReleaseAction(step.version, plan.getPreflightMillis());
+            run.addAction(action);
+            plan.describe(logger);
+            if (!plan.isApplicable()) {
+                throw new AbortException(Messages.MantisReleaseStep_NotApplicable(step.version));
+            }
+
+            final Map<String, Object> values = new HashMap<String, Object>();
+            values.put("version", step.version);
+            values.put("versionId", plan.getVersionRelease().getId().intValue());
+            values.put("preflightMillis", plan.getPreflightMillis());
+            values.put("dryRun", step.dryRun);
+            if (step.dryRun) {
+                action.dryRun();
+                Utility.log(logger, Messages.Updater_DryRun());
+                final ArrayList<Integer> planned = new ArrayList<Integer>();
+                for (final ReleasePlan.IssueChange change : plan.getIssueChanges()) {
+                    planned.add(change.getId());
+                }
+                values.put("planned", planned);
+                values.put("released", false);
+                return values;
+            }
+
+            final ReleaseJournal journal = ReleaseJournal.open(
+                    run.getParent().getRootDir(), step.projectId, step.version, run.getNumber());
+            if (journal.isResumed()) {
+                Utility.log(logger, Messages.Updater_ResumingRelease(step.version, journal.getBuilds().get(0)));
+            }
+            final ReleaseResult result = new ReleaseExecutor(site).apply(plan, journal, logger);
+            action.applied(result);
+            Utility.log(logger, Messages.Updater_Applied(result.getApplyMillis(), result.getClosedIssues().size(),
+                    result.getSkippedIssues().size() + result.getResumedIssues().size(),
+                    result.getFailedIssues().size()));
+            if (!result.isVersionReleased()) {
+                throw new AbortException(Messages.ReleaseExecutor_VersionNotReleased(
+                        step.version, result.getFailedIssues().size()));
+            }
+            final ArrayList<Integer> skipped = new ArrayList<Integer>(result.getSkippedIssues());
+            skipped.addAll(result.getResumedIssues());
+            values.put("closed", new ArrayList<Integer>(result.getClosedIssues()));
+            values.put("skipped", skipped);
+            values.put("failed", new ArrayList<Integer>(result.getFailedIssues()));
+            values.put("released", true);
+            values.put("applyMillis", result.getApplyMillis());
+            return values;
+        }
+    }
+
+    @Extension(optional = true)
+    public static final class DescriptorImpl extends AbstractStepDescriptorImpl {
+
+        public DescriptorImpl() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "mantisRelease";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return Messages.MantisReleaseStep_DisplayName();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package hudson.plugins.mantis;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Job;
+import hudson.model.RootAction;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Shows, under /mantis, how the configured sites are used: calls, throttling and bytes exchanged.
+ * /mantis/builds?issue=123 lists, as JSON, the builds of every readable job which used an issue.
+ */
+@Extension
+public final class MantisRootAction implements RootAction {
+
+    public List<MantisSite> getSites() {
+        return Arrays.asList(MantisProjectProperty.DESCRIPTOR.getSites());
+    }
+
+    public void doBuilds(@QueryParameter final int issue, final StaplerResponse rsp) throws IOException {
+        final String rootUrl = Util.fixNull(Jenkins.getInstance().getRootUrl());
+        final JSONArray builds = new JSONArray();
+        // only the jobs the user can read are listed
+        for (final Job<?, ?> job : Jenkins.getInstance().getAllItems(Job.class)) {
+            final IssueBuildIndex index = IssueBuildIndex.ifExists(job);
+            if (index == null) {
+                continue;
+            }
+            for (final Map.Entry<Integer, IssueBuildIndex.Kind> entry : index.find(issue).entrySet()) {
+                final JSONObject build = new JSONObject();
+                build.put("job", job.getFullName());
+                build.put("number", entry.getKey());
+                build.put("kind", entry.getValue().name());
+                build.put("url", rootUrl + job.getUrl() + entry.getKey() + "/");
+                builds.add(build);
+            }
+        }
+        final JSONObject result = new JSONObject();
+        result.put("issue", issue);
+        result.put("builds", builds);
+        rsp.setContentType("application/json;charset=UTF-8");
+        rsp.getWriter().print(result.toString());
+    }
+
+    public String getIconFileName() {
+        return null;
+    }
+
+    public String getDisplayName() {
+        return Messages.MantisRootAction_DisplayName();
+    }
+
+    public String getUrlName() {
+        return "mantis";
+    }
+}
@@ -1,27 +1,38 @@
 package hudson.plugins.mantis;
 
+import hudson.FilePath;
 import hudson.Util;
 import hudson.model.AbstractProject;
 import hudson.plugins.mantis.model.MantisCategory;
 import hudson.plugins.mantis.model.MantisIssue;
+import hudson.plugins.mantis.model.MantisIssueHeader;
 import hudson.plugins.mantis.model.MantisNote;
 import hudson.plugins.mantis.model.MantisProject;
 import hudson.plugins.mantis.model.MantisProjectVersion;
 import hudson.plugins.mantis.model.MantisViewState;
+import hudson.plugins.mantis.soap.AxisTransport;
+import hudson.plugins.mantis.soap.IssueHeaderHandler;
 import hudson.plugins.mantis.soap.MantisSession;
 import hudson.plugins.mantis.soap.MantisSessionFactory;
+import hudson.plugins.mantis.soap.MantisTransport;
+import hudson.plugins.mantis.soap.SiteThrottle;
+import hudson.plugins.mantis.soap.TransportStatistics;
 import hudson.plugins.mantis.soap.mantis120.IssueData;
 import hudson.plugins.mantis.soap.mantis120.ObjectRef;
 import hudson.util.Secret;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.math.BigInteger;
 
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.IOUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 /**
@@ -74,6 +85,31 @@ public final class MantisSite {
      */
     private Secret secretBasicPassword;
 
+    /**
+     * id of the {@link MantisTransport} used to talk to this Mantis.
+     */
+    private String transport;
+
+    /**
+     * what is sent and accepted gzip compressed.
+     */
+    private Compression compression;
+
+    /**
+     * whether multi-refs and xsi:type attributes are left out of requests.
+     */
+    private boolean leanEncoding;
+
+    /**
+     * whether version searches read only issue ids, and take their state from {@link IssueStateCache}.
+     */
+    private boolean idSearch;
+
+    /**
+     * seconds during which notes added to the same issue are merged into one, 0 to add them at once.
+     */
+    private int noteWindow;
+
     public static MantisSite get(final AbstractProject<?, ?> p) {
         final MantisProjectProperty mpp = p.getProperty(MantisProjectProperty.class);
         if (mpp != null) {
@@ -83,9 +119,8 @@ public final class MantisSite {
             }
         }
 
-        final MantisSite[] sites = MantisProjectProperty.DESCRIPTOR.getSites();
-        if (sites.length == 1) {
-            return sites[0];
+        if (MantisProjectProperty.DESCRIPTOR.getSiteCount() == 1) {
+            return MantisProjectProperty.DESCRIPTOR.getDefaultSite();
         }
 
         return null;
@@ -138,9 +173,70 @@ public final class MantisSite {
         return secretBasicPassword;
     }
 
-    @DataBoundConstructor
+    public String getTransport() {
+        if (transport == null) {
+            return AxisTransport.ID;
+        }
+        return transport;
+    }
+
+    public Compression getCompression() {
+        if (compression == null) {
+            return Compression.NONE;
+        }
+        return compression;
+    }
+
+    public boolean isLeanEncoding() {
+        return leanEncoding;
+    }
+
+    public boolean isIdSearch() {
+        return idSearch;
+    }
+
+    public int getNoteWindow() {
+        return noteWindow;
+    }
+
+    /**
+     * @return bytes exchanged with this site, counted by the transports which can.
+     */
+    public TransportStatistics getTransportStatistics() {
+        return TransportStatistics.of(getName());
+    }
+
+    /**
+     * @return rate and concurrency limits of the calls to this site, shared by all jobs.
+     */
+    public SiteThrottle getThrottle() {
+        return SiteThrottle.of(this);
+    }
+
+    /**
+     * @return the coalescing of concurrent identical reads of this site.
+     */
+    public SingleFlight getSingleFlight() {
+        return SingleFlight.of(this);
+    }
+
     public MantisSite(final URL url, final String version, final String userName,
             final String password, final String basicUserName, final String basicPassword) {
+        this(url, version, userName, password, basicUserName, basicPassword, null, null, false);
+    }
+
+    public MantisSite(final URL url, final String version, final String userName,
+            final String password, final String basicUserName, final String basicPassword,
+            final String transport, final String compression, final boolean leanEncoding) {
+        this(url, version, userName, password, basicUserName, basicPassword, transport, compression,
+                leanEncoding, false, 0);
+    }
+
+    @DataBoundConstructor
+    public MantisSite(final URL url, final String version, final String userName,
+            final String password, final String basicUserName, final String basicPassword,
+            final String transport, final String compression, final boolean leanEncoding,
+            final boolean idSearch, final int noteWindow) {
         if (!url.toExternalForm().endsWith("/")) {
             try {
                 this.url = new URL(url.toExternalForm() + '/');
@@ -155,6 +251,11 @@ public final class MantisSite {
         this.secretPassword = Secret.fromString(Util.fixEmptyAndTrim(password));
         this.basicUserName = Util.fixEmptyAndTrim(basicUserName);
         this.secretBasicPassword = Secret.fromString(Util.fixEmptyAndTrim(basicPassword));
+        this.transport = Util.fixEmptyAndTrim(transport);
+        this.compression = Compression.getCompressionSafely(compression, Compression.NONE);
+        this.leanEncoding = leanEncoding;
+        this.idSearch = idSearch;
+        this.noteWindow = Math.max(0, noteWindow);
     }
 
     public String getIssueLink(int issueNo) {
@@ -242,17 +343,54 @@ public final class MantisSite {
         return session.updateProjectVersion(version);
     }
 
+    /**
+     * @return the issue, from the mirror of its project if there is one, see {@link IssueMirrorSync}.
+     * Concurrent reads of the same issue share one call, see {@link SingleFlight}.
+     */
     public MantisIssue getIssue(final int id) throws MantisHandlingException {
+        final MantisIssueHeader mirrored = IssueStateCache.of(this).getMirrored(id);
+        if (mirrored != null) {
+            return new MantisIssue(id, mirrored.getSummary(), mirrored.getTargetVersion(),
+                    mirrored.getFixedInVersion());
+        }
         final MantisSession session = createSession();
-        return session.getIssue(id);
+        return getSingleFlight().run("issue:" + id, new Callable<MantisIssue>() {
+            public MantisIssue call() throws MantisHandlingException {
+                return session.getIssue(id);
+            }
+        });
     }
     
+    /**
+     * @return the state of the issue, from the mirror of its project if there is one.
+     */
+    public MantisIssueHeader getIssueHeader(final int id) throws MantisHandlingException {
+        final MantisIssueHeader mirrored = IssueStateCache.of(this).getMirrored(id);
+        if (mirrored != null) {
+            return mirrored;
+        }
+        return createSession().getIssueHeader(id);
+    }
+
     public hudson.plugins.mantis.soap.mantis120.IssueHeaderData[] /*java.math.BigInteger[]*/ tjd_getTargetVersionIssues(int project , String targetVersion, PrintStream logger) throws MantisHandlingException {
         final MantisSession session = createSession();
         //Utility.log(logger, Messages.tjd_monmsg("xxxxxxx"));
         return session.tjd_getTargetVersionIssues(project, targetVersion, logger);
     }
     
+    /**
+     * Hands the headers of the issues targeted at the version to the handler, as they are decoded.
+     * @return number of headers found.
+     */
+    public int searchIssueHeaders(int project, String targetVersion, IssueHeaderHandler handler, PrintStream logger)
+            throws MantisHandlingException {
+        final MantisSession session = createSession();
+        if (idSearch) {
+            return IssueStateCache.of(this).search(session, project, targetVersion, handler, logger);
+        }
+        return session.searchIssueHeaders(project, targetVersion, handler, logger);
+    }
+
     public void updateIssue(final int id, final String projectVersion, final boolean keepNotePrivate, final int status, PrintStream logger)
             throws MantisHandlingException {
 
@@ -278,14 +416,26 @@ public final class MantisSite {
         //
     }
 
-    public List<MantisProject> getProjects() throws MantisHandlingException {
+    public void addNote(final int id, final MantisNote note) throws MantisHandlingException {
+        final MantisSession session = createSession();
+        session.addNote(id, note);
+    }
+
+    /**
+     * Sends a check-in to the issue, Mantis adds the comment as a note.
+     * @return false if Mantis rejected it.
+     */
+    public boolean checkin(final int id, final String comment, final boolean fixed) throws MantisHandlingException {
         final MantisSession session = createSession();
-        return session.getProjects();
+        return session.checkin(id, comment, fixed);
+    }
+
+    public List<MantisProject> getProjects() throws MantisHandlingException {
+        return MetadataCache.of(this).getProjects(createSession());
     }
     
     public List<MantisCategory> getCategories(int projectId) throws MantisHandlingException {
-        final MantisSession session = createSession();
-        return session.getCategories(projectId);
+        return MetadataCache.of(this).getCategories(createSession(), projectId);
     }
 
     public int addIssue(MantisIssue issue) throws MantisHandlingException {
@@ -293,7 +443,34 @@ public final class MantisSite {
         return session.addIssue(issue);
     }
     
-    private MantisSession createSession() throws MantisHandlingException {
+    public int addAttachment(int id, String name, String fileType, byte[] content)
+            throws MantisHandlingException {
+        final MantisSession session = createSession();
+        return session.addAttachment(id, name, fileType, content);
+    }
+
+    /**
+     * Attaches part of a file, streamed from wherever it is, for instance an agent.
+     * @param skip bytes skipped at the start of the file.
+     * @param length bytes sent.
+     */
+    public int addAttachment(int id, String name, String fileType, FilePath file, long skip, long length)
+            throws MantisHandlingException, InterruptedException {
+        final MantisSession session = createSession();
+        try {
+            final InputStream in = file.read();
+            try {
+                IOUtils.skipFully(in, skip);
+                return session.addAttachment(id, name, fileType, in, length);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new MantisHandlingException(e);
+        }
+    }
+
+    MantisSession createSession() throws MantisHandlingException {
         return MantisSessionFactory.getSession(this);
     }
 
@@ -330,6 +507,42 @@ public final class MantisSite {
         }
     }
 
+    public enum Compression {
+        /**
+         * nothing compressed.
+         */
+        NONE(Messages.MantisSite_Compression_None()),
+        /**
+         * responses compressed if the server agrees.
+         */
+        RESPONSES(Messages.MantisSite_Compression_Responses()),
+        /**
+         * requests compressed too.
+         */
+        ALL(Messages.MantisSite_Compression_All());
+
+        private final String displayName;
+
+        private Compression(final String displayName) {
+            this.displayName = displayName;
+        }
+
+        public static Compression getCompressionSafely(final String compression, final Compression def) {
+            Compression ret = def;
+            for (final Compression c : Compression.values()) {
+                if (c.name().equalsIgnoreCase(compression)) {
+                    ret = c;
+                    break;
+                }
+            }
+            return ret;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
     protected Object readResolve() {
         if (password != null) {
             secretPassword = Secret.fromString(password);
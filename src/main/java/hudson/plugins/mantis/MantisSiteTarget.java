@@ -0,0 +1,61 @@
+package hudson.plugins.mantis;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.ListBoxModel;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * A Mantis site, and the id of the project on this site, which a job releases to
+ * in addition to the site of its {@link MantisProjectProperty}.
+ */
+public final class MantisSiteTarget extends AbstractDescribableImpl<MantisSiteTarget> {
+
+    private final String siteName;
+
+    private final int projectId;
+
+    @DataBoundConstructor
+    public MantisSiteTarget(final String siteName, final int projectId) {
+        this.siteName = Util.fixEmptyAndTrim(siteName);
+        this.projectId = projectId;
+    }
+
+    public String getSiteName() {
+        return siteName;
+    }
+
+    public int getProjectId() {
+        return projectId;
+    }
+
+    /**
+     * @return the configured site, or null if it has been removed.
+     */
+    public MantisSite getSite() {
+        if (siteName == null) {
+            return MantisProjectProperty.DESCRIPTOR.getDefaultSite();
+        }
+        return MantisProjectProperty.DESCRIPTOR.getSite(siteName);
+    }
+
+    @Extension
+    public static final class DescriptorImpl extends Descriptor<MantisSiteTarget> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.MantisSiteTarget_DisplayName();
+        }
+
+        public ListBoxModel doFillSiteNameItems() {
+            return MantisProjectProperty.DESCRIPTOR.doFillSiteNameItems();
+        }
+
+        public ListBoxModel doFillProjectIdItems(@QueryParameter final String siteName) {
+            return MantisProjectProperty.DESCRIPTOR.doFillProjectIdItems(siteName);
+        }
+    }
+}
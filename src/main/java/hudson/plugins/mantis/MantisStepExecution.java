@@ -0,0 +1,106 @@
+package hudson.plugins.mantis;
+
+import hudson.AbortException;
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+
+/**
+ * Base of the Mantis Pipeline step executions.
+ * The work runs on the {@link MantisExecutor} pool: {@link #start()} returns at once,
+ * so neither an executor nor the CPS thread is held while waiting on Mantis,
+ * and the outcome is handed back to the script as a map.
+ */
+abstract class MantisStepExecution extends AbstractStepExecutionImpl {
+
+    private static final long serialVersionUID = 1L;
+
+    @StepContextParameter
+    private transient Run<?, ?> run;
+
+    @StepContextParameter
+    private transient TaskListener listener;
+
+    private transient volatile Future<?> task;
+
+    /**
+     * set by whichever of the task, {@link #stop} or {@link #onResume} completes the step first.
+     */
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    @Override
+    public final boolean start() throws Exception {
+        task = MantisExecutor.get().submit(new Runnable() {
+            public void run() {
+                final String previousJob = MantisExecutor.enterJob(MantisStepExecution.this.run.getParent());
+                try {
+                    final Map<String, Object> values = execute(MantisStepExecution.this.run, listener);
+                    if (done.compareAndSet(false, true)) {
+                        getContext().onSuccess(values);
+                    }
+                } catch (final MantisHandlingException e) {
+                    fail(new AbortException(e.getMessage()));
+                } catch (final Exception e) {
+                    fail(e);
+                } finally {
+                    MantisExecutor.exitJob(previousJob);
+                }
+            }
+        });
+        return false;
+    }
+
+    @Override
+    public void stop(final Throwable cause) throws Exception {
+        final Future<?> t = task;
+        if (t != null) {
+            t.cancel(true);
+        }
+        fail(cause);
+    }
+
+    @Override
+    public void onResume() {
+        // the background task did not survive the restart
+        fail(new AbortException(Messages.MantisStep_NotResumable()));
+    }
+
+    /**
+     * Fails the step, unless it is completed already: the task may still be running when stopped.
+     */
+    private void fail(final Throwable cause) {
+        if (done.compareAndSet(false, true)) {
+            getContext().onFailure(cause);
+        }
+    }
+
+    /**
+     * Performs the step, off the CPS thread.
+     * @return the values returned to the script.
+     */
+    protected abstract Map<String, Object> execute(Run<?, ?> run, TaskListener listener) throws Exception;
+
+    /**
+     * @param name name of the site, or null for the only configured one.
+     */
+    static MantisSite getSite(final String name) throws AbortException {
+        final MantisProjectProperty.DescriptorImpl descriptor = MantisProjectProperty.DESCRIPTOR;
+        final MantisSite site;
+        if (Util.fixEmptyAndTrim(name) != null) {
+            site = descriptor.getSite(name);
+        } else if (descriptor.getSiteCount() == 1) {
+            site = descriptor.getDefaultSite();
+        } else {
+            site = null;
+        }
+        if (site == null) {
+            throw new AbortException(Messages.MantisStep_NoMantisSite(Util.fixNull(name)));
+        }
+        return site;
+    }
+}
@@ -68,6 +68,16 @@ public final class MantisVersionRegister extends Recorder {
     @Override
     public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
             throws InterruptedException, IOException {
+        final String previousJob = MantisExecutor.enterJob(build.getParent());
+        try {
+            return perform(build, listener);
+        } finally {
+            MantisExecutor.exitJob(previousJob);
+        }
+    }
+
+    private boolean perform(AbstractBuild<?, ?> build, BuildListener listener)
+            throws InterruptedException, IOException {
         
         final PrintStream logger = listener.getLogger();
         
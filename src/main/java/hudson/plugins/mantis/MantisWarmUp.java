@@ -0,0 +1,57 @@
+package hudson.plugins.mantis;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Warms up every configured site in the background once the jobs are loaded, so that the first
+ * build does not pay for the SOAP stack initialization, the TLS handshake and the metadata reads.
+ * Each site is checked with a project listing, then the categories of the projects used by the jobs
+ * are read into the {@link MetadataCache}. Versions are not: every decision about them asks Mantis.
+ */
+final class MantisWarmUp implements Runnable {
+
+    private final MantisSite site;
+
+    private final Set<Integer> projectIds;
+
+    MantisWarmUp(final MantisSite site, final Set<Integer> projectIds) {
+        this.site = site;
+        this.projectIds = projectIds;
+    }
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void warmUp() {
+        final Map<String, Set<Integer>> used = MantisProjectProperty.getUsedProjects();
+        for (final MantisSite site : MantisProjectProperty.DESCRIPTOR.getSites()) {
+            final Set<Integer> ids = used.get(site.getName());
+            MantisExecutor.get().submit(new MantisWarmUp(site, ids != null ? ids : new HashSet<Integer>()));
+        }
+    }
+
+    public void run() {
+        final long start = System.nanoTime();
+        try {
+            site.getProjects();
+            for (final int projectId : projectIds) {
+                site.getCategories(projectId);
+            }
+        } catch (final MantisHandlingException e) {
+            LOGGER.log(Level.WARNING, Messages.MantisWarmUp_Failed(site.getName(), e.getMessage()));
+            return;
+        } catch (final RuntimeException e) {
+            LOGGER.log(Level.WARNING, Messages.MantisWarmUp_Failed(site.getName(), e.getMessage()), e);
+            return;
+        }
+        LOGGER.log(Level.INFO, Messages.MantisWarmUp_Done(site.getName(), projectIds.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(MantisWarmUp.class.getName());
+}
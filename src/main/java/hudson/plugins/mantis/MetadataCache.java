@@ -0,0 +1,114 @@
+package hudson.plugins.mantis;
+
+import hudson.plugins.mantis.model.MantisCategory;
+import hudson.plugins.mantis.model.MantisProject;
+import hudson.plugins.mantis.soap.MantisSession;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-site cache of the projects and categories read from Mantis,
+ * which change rarely but are read by every configuration page and release.
+ * Entries expire after {@link #TTL} milliseconds.
+ */
+final class MetadataCache {
+
+    static final long TTL = Long.getLong(MetadataCache.class.getName() + ".ttl", TimeUnit.MINUTES.toMillis(10));
+
+    private static final ConcurrentMap<String, MetadataCache> SITES = new ConcurrentHashMap<String, MetadataCache>();
+
+    private static final String PROJECTS = "projects";
+
+    private static final String CATEGORIES = "categories:";
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * misses of concurrent readers share one call.
+     */
+    private final SingleFlight flight;
+
+    private MetadataCache(final MantisSite site) {
+        this.flight = SingleFlight.of(site);
+    }
+
+    static MetadataCache of(final MantisSite site) {
+        MetadataCache cache = SITES.get(site.getName());
+        if (cache == null) {
+            final MetadataCache created = new MetadataCache(site);
+            cache = SITES.putIfAbsent(site.getName(), created);
+            if (cache == null) {
+                cache = created;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Forgets everything, used when the sites are reconfigured.
+     */
+    static void clearAll() {
+        SITES.clear();
+    }
+
+    List<MantisProject> getProjects(final MantisSession session) throws MantisHandlingException {
+        List<MantisProject> projects = get(PROJECTS);
+        if (projects == null) {
+            projects = flight.run(PROJECTS, new Callable<List<MantisProject>>() {
+                public List<MantisProject> call() throws MantisHandlingException {
+                    return put(PROJECTS, session.getProjects());
+                }
+            });
+        }
+        return projects;
+    }
+
+    List<MantisCategory> getCategories(final MantisSession session, final int projectId)
+            throws MantisHandlingException {
+        final String key = CATEGORIES + projectId;
+        List<MantisCategory> categories = get(key);
+        if (categories == null) {
+            categories = flight.run(key, new Callable<List<MantisCategory>>() {
+                public List<MantisCategory> call() throws MantisHandlingException {
+                    return put(key, session.getCategories(projectId));
+                }
+            });
+        }
+        return categories;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> get(final String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires < System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return (List<T>) entry.value;
+    }
+
+    private <T> List<T> put(final String key, final List<T> value) {
+        final List<T> copy = Collections.unmodifiableList(value);
+        entries.put(key, new Entry(copy, System.currentTimeMillis() + TTL));
+        return copy;
+    }
+
+    private static final class Entry {
+
+        private final List<?> value;
+
+        private final long expires;
+
+        Entry(final List<?> value, final long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package hudson.plugins.mantis;
+
+import hudson.init.Terminator;
+import hudson.plugins.mantis.model.MantisNote;
+import hudson.plugins.mantis.model.MantisViewState;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.Timer;
+
+/**
+ * Merges the notes added to the same issue of a site within {@link MantisSite#getNoteWindow()} seconds,
+ * whatever the job they come from: the first note opens the window, and at its end a single note made
+ * of every note received is added. The window is per issue. A merged note which cannot be added is
+ * tried again at the end of another window, and if it is given up, this is reported in the log of the
+ * next build using the site, as the builds which queued it are over by then. Only the notes of failure
+ * recurrences go through it: release notes are journaled and check-ins are not notes.
+ */
+final class NoteCoalescer {
+
+    /**
+     * Where the merged notes are added.
+     */
+    interface Sink {
+
+        void addNote(int id, MantisNote note) throws MantisHandlingException;
+    }
+
+    /**
+     * attempts to add a merged note before giving it up.
+     */
+    static final int MAX_ATTEMPTS = 3;
+
+    private static final ConcurrentMap<String, NoteCoalescer> SITES = new ConcurrentHashMap<String, NoteCoalescer>();
+
+    private static final String SEPARATOR = "\n\n";
+
+    private final Map<Integer, Pending> pending = new HashMap<Integer, Pending>();
+
+    /**
+     * notes given up, not reported yet.
+     */
+    private final List<String> failures = new ArrayList<String>();
+
+    private final ScheduledExecutorService timer;
+
+    private volatile Sink sink;
+
+    private volatile long windowMillis;
+
+    NoteCoalescer(final Sink sink, final long windowMillis, final ScheduledExecutorService timer) {
+        this.sink = sink;
+        this.windowMillis = windowMillis;
+        this.timer = timer;
+    }
+
+    static NoteCoalescer of(final MantisSite site) {
+        NoteCoalescer coalescer = SITES.get(site.getName());
+        if (coalescer == null) {
+            final NoteCoalescer created = new NoteCoalescer(sink(site), 0, Timer.get());
+            coalescer = SITES.putIfAbsent(site.getName(), created);
+            if (coalescer == null) {
+                coalescer = created;
+            }
+        }
+        // the site may have been reconfigured since
+        coalescer.sink = sink(site);
+        coalescer.windowMillis = TimeUnit.SECONDS.toMillis(Math.max(0, site.getNoteWindow()));
+        return coalescer;
+    }
+
+    private static Sink sink(final MantisSite site) {
+        return new Sink() {
+            public void addNote(final int id, final MantisNote note) throws MantisHandlingException {
+                site.addNote(id, note);
+            }
+        };
+    }
+
+    /**
+     * @return true if the notes are merged, false if they are added at once.
+     */
+    boolean isQueuing() {
+        return windowMillis > 0;
+    }
+
+    /**
+     * Adds the note, at once if the site has no window.
+     * @return true if the note has been queued, false if it has been added.
+     */
+    boolean addNote(final int id, final MantisNote note) throws MantisHandlingException {
+        if (!isQueuing()) {
+            sink.addNote(id, note);
+            return false;
+        }
+        synchronized (this) {
+            Pending p = pending.get(id);
+            if (p == null) {
+                p = new Pending();
+                pending.put(id, p);
+                schedule(id);
+            }
+            p.add(note);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the notes given up since the last report to the log of a build.
+     */
+    void reportFailures(final PrintStream logger) {
+        final List<String> reported;
+        synchronized (this) {
+            reported = new ArrayList<String>(failures);
+            failures.clear();
+        }
+        for (final String failure : reported) {
+            Utility.log(logger, failure);
+        }
+    }
+
+    private void schedule(final int id) {
+        timer.schedule(new Runnable() {
+            public void run() {
+                flush(id, true);
+            }
+        }, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds the merged note of the issue.
+     * @param retry whether a failed note is tried again at the end of another window.
+     */
+    void flush(final int id, final boolean retry) {
+        final Pending p;
+        synchronized (this) {
+            p = pending.remove(id);
+        }
+        if (p == null) {
+            return;
+        }
+        try {
+            sink.addNote(id, p.toNote());
+            LOGGER.log(Level.FINE, "Added {0} merged note(s) to issue #{1}", new Object[] {p.texts.size(), id});
+        } catch (final MantisHandlingException e) {
+            p.attempts++;
+            synchronized (this) {
+                if (retry && p.attempts < MAX_ATTEMPTS) {
+                    LOGGER.log(Level.INFO, "Failed to add the merged note to issue #{0}, trying again: {1}",
+                            new Object[] {id, e.getMessage()});
+                    final Pending newer = pending.get(id);
+                    if (newer != null) {
+                        // a new window has been opened meanwhile, the note goes with it
+                        newer.prepend(p);
+                    } else {
+                        pending.put(id, p);
+                        schedule(id);
+                    }
+                    return;
+                }
+                failures.add(Messages.NoteCoalescer_Lost(p.texts.size(), id, e.getMessage()));
+            }
+            LOGGER.log(Level.WARNING, Messages.Updater_FailedToAddNote_StarckTrace(id), e);
+        }
+    }
+
+    void flushAll() {
+        final List<Integer> ids;
+        synchronized (this) {
+            ids = new ArrayList<Integer>(pending.keySet());
+        }
+        for (final Integer id : ids) {
+            flush(id, false);
+        }
+    }
+
+    /**
+     * Adds the notes still waiting for the end of their window.
+     */
+    @Terminator
+    public static void flushAllSites() {
+        for (final NoteCoalescer coalescer : SITES.values()) {
+            coalescer.flushAll();
+        }
+    }
+
+    /**
+     * Notes received for one issue during the window.
+     */
+    private static final class Pending {
+
+        private final List<String> texts = new ArrayList<String>();
+
+        private MantisViewState viewState;
+
+        private int attempts;
+
+        void add(final MantisNote note) {
+            texts.add(note.getText());
+            merge(note.getViewState());
+        }
+
+        /**
+         * Puts the notes of an earlier window before these ones.
+         */
+        void prepend(final Pending earlier) {
+            texts.addAll(0, earlier.texts);
+            merge(earlier.viewState);
+            attempts = Math.max(attempts, earlier.attempts);
+        }
+
+        private void merge(final MantisViewState state) {
+            // a merged note is private as soon as one of its parts is
+            if (viewState == null || state == MantisViewState.PRIVATE) {
+                viewState = state;
+            }
+        }
+
+        MantisNote toNote() {
+            if (texts.size() == 1) {
+                return new MantisNote(texts.get(0), viewState);
+            }
+            final StringBuilder text = new StringBuilder(Messages.NoteCoalescer_Merged(texts.size()));
+            for (final String t : texts) {
+                text.append(SEPARATOR).append(t);
+            }
+            return new MantisNote(text.toString(), viewState);
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(NoteCoalescer.class.getName());
+}
@@ -0,0 +1,140 @@
+package hudson.plugins.mantis;
+
+import hudson.plugins.mantis.soap.MantisSession;
+import hudson.plugins.mantis.soap.mantis120.IssueData;
+import hudson.plugins.mantis.soap.mantis120.ObjectRef;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies a {@link ReleasePlan} through a single session.
+ * Issues are closed first, in batches with progress reported after each batch,
+ * and the version is released last, only if every issue could be closed:
+ * a failure midway never leaves a released version with open issues.
+ * Every acknowledged mutation is recorded in a {@link ReleaseJournal}, and mutations
+ * already recorded by a previous run are not sent again. The version itself is released
+ * whenever the plan found it releasable, and the journal is then completed.
+ * Issues the search reported as closed are left untouched when they are already
+ * fixed in the released version: they cost one read instead of three calls.
+ * Notes are added at once rather than through the {@link NoteCoalescer}: a note is recorded in the
+ * journal only once Mantis has it.
+ */
+final class ReleaseExecutor {
+
+    static final int BATCH_SIZE = 10;
+
+    private final MantisSite site;
+
+    ReleaseExecutor(final MantisSite site) {
+        this.site = site;
+    }
+
+    ReleaseResult apply(final ReleasePlan plan, final ReleaseJournal journal, final PrintStream logger)
+            throws MantisHandlingException, InterruptedException {
+        return apply(site.createSession(), plan, journal, logger);
+    }
+
+    ReleaseResult apply(final MantisSession session, final ReleasePlan plan, final ReleaseJournal journal,
+            final PrintStream logger) throws MantisHandlingException, InterruptedException {
+        if (!plan.isApplicable()) {
+            throw new IllegalArgumentException("plan is not applicable.");
+        }
+        final long start = System.nanoTime();
+        final ReleaseResult result = new ReleaseResult(plan.getVersion());
+
+        final List<ReleasePlan.IssueChange> changes = plan.getIssueChanges();
+        final int total = changes.size();
+        for (int from = 0; from < total; from += BATCH_SIZE) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            final int to = Math.min(from + BATCH_SIZE, total);
+            for (final ReleasePlan.IssueChange change : changes.subList(from, to)) {
+                if (journal.isIssueUpdated(change.getId())
+                        && change.getCurrentStatus() == change.getTargetStatus()) {
+                    result.resumed(change.getId());
+                    continue;
+                }
+                try {
+                    if (applyIssueChange(session, change, journal, logger)) {
+                        result.closed(change.getId());
+                        Utility.log(logger, Messages.Updater_Updating(change.getId()));
+                    } else {
+                        result.skipped(change.getId());
+                    }
+                } catch (final MantisHandlingException e) {
+                    result.failed(change.getId());
+                    Utility.log(logger, Messages.Updater_FailedToAddNote(change.getId(), e.getMessage()));
+                    LOGGER.log(Level.WARNING, Messages.Updater_FailedToAddNote_StarckTrace(change.getId()), e);
+                }
+            }
+            Utility.log(logger, Messages.ReleaseExecutor_Progress(to, total));
+        }
+
+        if (!result.getResumedIssues().isEmpty()) {
+            Utility.log(logger, Messages.ReleaseExecutor_Resumed(result.getResumedIssues().size()));
+        }
+
+        if (result.getFailedIssues().isEmpty()) {
+            // the plan read the version as not released yet: whatever a previous run recorded,
+            // it has to be released now
+            session.updateProjectVersion(plan.getVersionRelease());
+            try {
+                journal.complete();
+            } catch (final IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to complete the release journal of " + plan.getVersion(), e);
+            }
+            result.versionReleased();
+        } else {
+            Utility.log(logger, Messages.ReleaseExecutor_VersionNotReleased(
+                    plan.getVersion(), result.getFailedIssues().size()));
+        }
+        result.setApplyMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    /**
+     * @return false if the issue was already in the target state and has not been touched.
+     */
+    private boolean applyIssueChange(final MantisSession session, final ReleasePlan.IssueChange change,
+            final ReleaseJournal journal, final PrintStream logger) throws MantisHandlingException {
+        final int id = change.getId();
+        final IssueData issue = session.getIssueData(id);
+        if (change.isStatusReached() && isUpToDate(issue, change)) {
+            return false;
+        }
+        issue.setFixed_in_version(change.getFixedInVersion());
+        issue.setStatus(new ObjectRef(BigInteger.valueOf(change.getTargetStatus()), null));
+        try {
+            // a previous run stopped between the note and the update: do not post the note twice.
+            // if the issue had been updated, it has been reopened since and gets a new note.
+            if (!journal.isNoteAdded(id) || journal.isIssueUpdated(id)) {
+                session.addNote(id, change.getNote());
+                journal.noteAdded(id);
+            }
+            session.updateIssue(id, issue, logger);
+            journal.issueUpdated(id);
+        } catch (final IOException e) {
+            throw new MantisHandlingException("Failed to record issue #" + id + " in the release journal.", e);
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the issue already has the status and the fixed-in-version of the change.
+     */
+    static boolean isUpToDate(final IssueData issue, final ReleasePlan.IssueChange change) {
+        final ObjectRef status = issue.getStatus();
+        if (status == null || status.getId() == null || status.getId().intValue() != change.getTargetStatus()) {
+            return false;
+        }
+        return change.getFixedInVersion().equals(issue.getFixed_in_version());
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ReleaseExecutor.class.getName());
+}
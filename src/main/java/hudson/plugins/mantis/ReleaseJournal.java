@@ -0,0 +1,177 @@
+package hudson.plugins.mantis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only journal of the mutations applied while releasing one version of one project.
+ * Each line is synced to disk once the mutation has been acknowledged by Mantis,
+ * so that a build restarted after a crash or an abort resumes where the previous one stopped.
+ * Every record ends with a dot, so that a record cut by a crash is never mistaken for another one.
+ * The journal is deleted once the release is complete, so that releasing the same version again,
+ * after it has been un-released in Mantis, starts from scratch.
+ * <pre>
+ * BUILD 12 .
+ * NOTE 1234 .
+ * ISSUE 1234 .
+ * COMPLETE .
+ * </pre>
+ */
+final class ReleaseJournal {
+
+    private static final String BUILD = "BUILD";
+
+    private static final String NOTE = "NOTE";
+
+    private static final String ISSUE = "ISSUE";
+
+    private static final String COMPLETE = "COMPLETE";
+
+    private static final String END = ".";
+
+    private final File file;
+
+    private final List<Integer> builds = new ArrayList<Integer>();
+
+    private final Set<Integer> notes = new HashSet<Integer>();
+
+    private final Set<Integer> issues = new HashSet<Integer>();
+
+    private ReleaseJournal(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Opens the journal of the version, and records that the build works on it.
+     * @param dir directory of the job
+     */
+    static ReleaseJournal open(final File dir, final int projectId, final String version, final int buildNumber)
+            throws IOException {
+        return open(dir, null, projectId, version, buildNumber);
+    }
+
+    /**
+     * Opens the journal of the version on an additional site of the job.
+     * @param siteName the site, or null for the main site of the job
+     */
+    static ReleaseJournal open(final File dir, final String siteName, final int projectId, final String version,
+            final int buildNumber) throws IOException {
+        final String prefix = siteName != null ? "release-" + sanitize(siteName) + "-" : "release-";
+        final File file = new File(new File(dir, "mantis"), prefix + projectId + "-" + sanitize(version) + ".journal");
+        final ReleaseJournal journal = new ReleaseJournal(file);
+        journal.load();
+        journal.append(BUILD + " " + buildNumber);
+        journal.builds.add(buildNumber);
+        return journal;
+    }
+
+    /**
+     * @return builds which worked on this release, the current one last.
+     */
+    List<Integer> getBuilds() {
+        return Collections.unmodifiableList(builds);
+    }
+
+    boolean isResumed() {
+        return builds.size() > 1;
+    }
+
+    synchronized boolean isNoteAdded(final int id) {
+        return notes.contains(id);
+    }
+
+    synchronized boolean isIssueUpdated(final int id) {
+        return issues.contains(id);
+    }
+
+    synchronized void noteAdded(final int id) throws IOException {
+        append(NOTE + " " + id);
+        notes.add(id);
+    }
+
+    synchronized void issueUpdated(final int id) throws IOException {
+        append(ISSUE + " " + id);
+        issues.add(id);
+    }
+
+    /**
+     * Forgets the release once it is complete. If the journal cannot be deleted, a record marks
+     * everything before it as complete.
+     */
+    synchronized void complete() throws IOException {
+        if (!file.delete() && file.exists()) {
+            append(COMPLETE);
+        }
+        reset();
+    }
+
+    private void reset() {
+        builds.clear();
+        notes.clear();
+        issues.clear();
+    }
+
+    private void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                parse(line.trim());
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void parse(final String line) {
+        final String[] fields = line.split(" ");
+        if (!END.equals(fields[fields.length - 1])) {
+            // record truncated by a crash, ignore it
+            return;
+        }
+        try {
+            if (fields.length == 2 && COMPLETE.equals(fields[0])) {
+                reset();
+            } else if (fields.length == 3 && BUILD.equals(fields[0])) {
+                builds.add(Integer.parseInt(fields[1]));
+            } else if (fields.length == 3 && NOTE.equals(fields[0])) {
+                notes.add(Integer.parseInt(fields[1]));
+            } else if (fields.length == 3 && ISSUE.equals(fields[0])) {
+                issues.add(Integer.parseInt(fields[1]));
+            }
+        } catch (final NumberFormatException e) {
+            // truncated line
+        }
+    }
+
+    private void append(final String line) throws IOException {
+        final File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        final FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            // start with a line separator: a previous run may have crashed in the middle of a line
+            out.write(("\n" + line + " " + END + "\n").getBytes("UTF-8"));
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    static String sanitize(final String version) {
+        return String.valueOf(version).replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
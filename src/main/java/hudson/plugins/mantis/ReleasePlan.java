@@ -0,0 +1,148 @@
+package hudson.plugins.mantis;
+
+import hudson.plugins.mantis.model.MantisNote;
+import hudson.plugins.mantis.model.MantisProjectVersion;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Complete set of mutations needed to release a version, computed before anything is changed on Mantis.
+ */
+final class ReleasePlan {
+
+    private final int projectId;
+
+    private final String version;
+
+    private final MantisProjectVersion versionRelease;
+
+    private final List<IssueChange> issueChanges;
+
+    private final List<String> problems;
+
+    private final long preflightMillis;
+
+    ReleasePlan(final int projectId, final String version, final MantisProjectVersion versionRelease,
+            final List<IssueChange> issueChanges, final List<String> problems, final long preflightMillis) {
+        this.projectId = projectId;
+        this.version = version;
+        this.versionRelease = versionRelease;
+        this.issueChanges = Collections.unmodifiableList(new ArrayList<IssueChange>(issueChanges));
+        this.problems = Collections.unmodifiableList(new ArrayList<String>(problems));
+        this.preflightMillis = preflightMillis;
+    }
+
+    int getProjectId() {
+        return projectId;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the version to release, or null if it is not releasable.
+     */
+    MantisProjectVersion getVersionRelease() {
+        return versionRelease;
+    }
+
+    List<IssueChange> getIssueChanges() {
+        return issueChanges;
+    }
+
+    /**
+     * @return reasons why the plan must not be applied.
+     */
+    List<String> getProblems() {
+        return problems;
+    }
+
+    boolean isApplicable() {
+        return problems.isEmpty() && versionRelease != null;
+    }
+
+    long getPreflightMillis() {
+        return preflightMillis;
+    }
+
+    void describe(final PrintStream logger) {
+        Utility.log(logger, Messages.ReleasePlan_Header(version, issueChanges.size()));
+        for (final IssueChange change : issueChanges) {
+            if (change.isStatusReached()) {
+                Utility.log(logger, Messages.ReleasePlan_IssueClosed(change.getId(), change.getSummary()));
+            } else {
+                Utility.log(logger, Messages.ReleasePlan_Issue(change.getId(), change.getCurrentStatus(),
+                        change.getTargetStatus(), change.getFixedInVersion(), change.getSummary()));
+            }
+        }
+        if (versionRelease != null) {
+            Utility.log(logger, Messages.ReleasePlan_Version(version, versionRelease.getId()));
+        }
+        for (final String problem : problems) {
+            Utility.log(logger, problem);
+        }
+    }
+
+    /**
+     * Status, fixed-in-version and note to set on one issue.
+     */
+    static final class IssueChange {
+
+        private final int id;
+
+        private final String summary;
+
+        private final int currentStatus;
+
+        private final int targetStatus;
+
+        private final String fixedInVersion;
+
+        private final MantisNote note;
+
+        IssueChange(final int id, final String summary, final int currentStatus, final int targetStatus,
+                final String fixedInVersion, final MantisNote note) {
+            this.id = id;
+            this.summary = summary;
+            this.currentStatus = currentStatus;
+            this.targetStatus = targetStatus;
+            this.fixedInVersion = fixedInVersion;
+            this.note = note;
+        }
+
+        int getId() {
+            return id;
+        }
+
+        String getSummary() {
+            return summary;
+        }
+
+        int getCurrentStatus() {
+            return currentStatus;
+        }
+
+        int getTargetStatus() {
+            return targetStatus;
+        }
+
+        String getFixedInVersion() {
+            return fixedInVersion;
+        }
+
+        MantisNote getNote() {
+            return note;
+        }
+
+        /**
+         * @return true if the search already reported the target status, in which case
+         *         the change may be a no-op.
+         */
+        boolean isStatusReached() {
+            return currentStatus == targetStatus;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package hudson.plugins.mantis;
+
+import hudson.plugins.mantis.model.MantisIssueHeader;
+import hudson.plugins.mantis.model.MantisNote;
+import hudson.plugins.mantis.model.MantisProjectVersion;
+import hudson.plugins.mantis.model.MantisViewState;
+import hudson.plugins.mantis.soap.IssueHeaderHandler;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the {@link ReleasePlan} of a version from one read of Mantis.
+ */
+final class ReleasePlanner {
+
+    /**
+     * issues must be at least resolved to be released.
+     */
+    static final int RESOLVED = 80;
+
+    /**
+     * status set on released issues.
+     */
+    static final int CLOSED = 90;
+
+    private final MantisSite site;
+
+    ReleasePlanner(final MantisSite site) {
+        this.site = site;
+    }
+
+    ReleasePlan plan(final int projectId, final String version, final String description,
+            final boolean keepNotePrivate, final PrintStream logger)
+            throws MantisHandlingException, InterruptedException {
+
+        final MantisViewState viewState = keepNotePrivate ? MantisViewState.PRIVATE : MantisViewState.PUBLIC;
+        final MantisNote note = new MantisNote("Released version " + version, viewState);
+        final List<ReleasePlan.IssueChange> changes = new ArrayList<ReleasePlan.IssueChange>();
+        final List<String> problems = new ArrayList<String>();
+
+        //Pre-flight: get issues for the selected project and the target version, and check that
+        //the version is releasable. Both are read-only and independent, so run them concurrently.
+        //Headers are checked as they are decoded, only the changes are kept.
+        final long preflightStart = System.nanoTime();
+        final ExecutorService executor = MantisExecutor.get();
+        final Future<Integer> issuesFuture = executor.submit(new Callable<Integer>() {
+            public Integer call() throws MantisHandlingException {
+                return site.searchIssueHeaders(projectId, version, new IssueHeaderHandler() {
+                    public void header(final MantisIssueHeader header) {
+                        check(header, projectId, version, note, changes, problems);
+                    }
+                }, logger);
+            }
+        });
+        final Future<BigInteger> versionFuture = executor.submit(new Callable<BigInteger>() {
+            public BigInteger call() throws MantisHandlingException {
+                return site.checkProjectVersionReleasable(BigInteger.valueOf(projectId), version);
+            }
+        });
+        BigInteger versionId;
+        try {
+            MantisExecutor.await(issuesFuture);
+            versionId = MantisExecutor.await(versionFuture);
+        } finally {
+            issuesFuture.cancel(true);
+            versionFuture.cancel(true);
+        }
+        final long preflightMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - preflightStart);
+
+        MantisProjectVersion versionRelease = null;
+        if (versionId == null) {
+            problems.add(Messages.tjd_monmsg("ERROR  The version [" + version + "] is not releasable on Mantis..."));
+        } else {
+            versionRelease = new MantisProjectVersion(BigInteger.valueOf(projectId), versionId, version,
+                    description + "\n" + Messages.MantisVersionRegister_VersionDescription(), true);
+        }
+        return new ReleasePlan(projectId, version, versionRelease, changes, problems, preflightMillis);
+    }
+
+    /**
+     * Checks that an issue for this project and this version (as target version) is either validated either resolved.
+     */
+    private static void check(final MantisIssueHeader header, final int projectId, final String version,
+            final MantisNote note, final List<ReleasePlan.IssueChange> changes, final List<String> problems) {
+        //!!bug mantis api!! : filter on project id is not taken into account... so here it is
+        if (header.getProjectId() != projectId) {
+            return;
+        }
+        final int status = header.getStatus();
+        if (status < RESOLVED) {
+            problems.add(Messages.tjd_monmsg("ERROR  The issue [" + header.getId()
+                    + "] is neither resolved nor validated... Satus is lower than 80..."));
+        } else {
+            changes.add(new ReleasePlan.IssueChange(header.getId(), header.getSummary(),
+                    status, CLOSED, version, note));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package hudson.plugins.mantis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What has been applied of a {@link ReleasePlan}.
+ */
+final class ReleaseResult {
+
+    private final String version;
+
+    private final List<Integer> closedIssues = new ArrayList<Integer>();
+
+    private final List<Integer> failedIssues = new ArrayList<Integer>();
+
+    private final List<Integer> resumedIssues = new ArrayList<Integer>();
+
+    private final List<Integer> skippedIssues = new ArrayList<Integer>();
+
+    private boolean versionReleased;
+
+    private long applyMillis;
+
+    ReleaseResult(final String version) {
+        this.version = version;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    void closed(final int id) {
+        closedIssues.add(id);
+    }
+
+    void failed(final int id) {
+        failedIssues.add(id);
+    }
+
+    /**
+     * The issue had been closed by a previous run of the same release.
+     */
+    void resumed(final int id) {
+        resumedIssues.add(id);
+    }
+
+    /**
+     * The issue was already closed and fixed in the version.
+     */
+    void skipped(final int id) {
+        skippedIssues.add(id);
+    }
+
+    void versionReleased() {
+        versionReleased = true;
+    }
+
+    void setApplyMillis(final long applyMillis) {
+        this.applyMillis = applyMillis;
+    }
+
+    List<Integer> getClosedIssues() {
+        return Collections.unmodifiableList(closedIssues);
+    }
+
+    List<Integer> getFailedIssues() {
+        return Collections.unmodifiableList(failedIssues);
+    }
+
+    List<Integer> getResumedIssues() {
+        return Collections.unmodifiableList(resumedIssues);
+    }
+
+    List<Integer> getSkippedIssues() {
+        return Collections.unmodifiableList(skippedIssues);
+    }
+
+    boolean isVersionReleased() {
+        return versionReleased;
+    }
+
+    long getApplyMillis() {
+        return applyMillis;
+    }
+}
@@ -0,0 +1,86 @@
+package hudson.plugins.mantis;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces identical reads made concurrently on one site: the first caller runs the call,
+ * and the callers arriving while it is in flight wait for its result instead of making their own.
+ * Results are shared, so they must not be modified.
+ */
+public final class SingleFlight {
+
+    private static final ConcurrentMap<String, SingleFlight> SITES = new ConcurrentHashMap<String, SingleFlight>();
+
+    private final ConcurrentMap<String, FutureTask<?>> inFlight = new ConcurrentHashMap<String, FutureTask<?>>();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong shared = new AtomicLong();
+
+    SingleFlight() {
+        //
+    }
+
+    public static SingleFlight of(final MantisSite site) {
+        SingleFlight flight = SITES.get(site.getName());
+        if (flight == null) {
+            final SingleFlight created = new SingleFlight();
+            flight = SITES.putIfAbsent(site.getName(), created);
+            if (flight == null) {
+                flight = created;
+            }
+        }
+        return flight;
+    }
+
+    /**
+     * Stops sharing the calls in flight, used when the site points to another Mantis.
+     */
+    static void forget(final MantisSite site) {
+        SITES.remove(site.getName());
+    }
+
+    /**
+     * Runs the call, or waits for the identical call already in flight.
+     * @param key identifies the call, for instance "issue:123".
+     */
+    @SuppressWarnings("unchecked")
+    <V> V run(final String key, final Callable<V> call) throws MantisHandlingException {
+        final FutureTask<V> task = new FutureTask<V>(call);
+        final FutureTask<V> existing = (FutureTask<V>) inFlight.putIfAbsent(key, task);
+        try {
+            if (existing != null) {
+                shared.incrementAndGet();
+                return MantisExecutor.await(existing);
+            }
+            calls.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            return MantisExecutor.await(task);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MantisHandlingException(e);
+        }
+    }
+
+    /**
+     * @return calls actually made.
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return calls saved by sharing the result of a call in flight.
+     */
+    public long getShared() {
+        return shared.get();
+    }
+}
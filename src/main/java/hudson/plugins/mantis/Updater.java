@@ -1,24 +1,26 @@
 package hudson.plugins.mantis;
 
+import hudson.FilePath;
 import hudson.model.AbstractBuild;
 import hudson.model.BuildListener;
 import hudson.model.Hudson;
 import hudson.model.Result;
 import hudson.model.Run;
+import hudson.plugins.mantis.changelog.ChangeLogWriter;
+import hudson.plugins.mantis.changelog.ReleaseEntry;
 import hudson.plugins.mantis.changeset.ChangeSet;
 import hudson.plugins.mantis.changeset.ChangeSetFactory;
 import hudson.plugins.mantis.model.MantisIssue;
-import hudson.plugins.mantis.model.MantisProjectVersion;
 import hudson.scm.ChangeLogSet.Entry;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 import java.io.PrintStream;
-import java.math.BigInteger;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -31,15 +33,14 @@ import java.util.regex.Pattern;
  */
 final class Updater {
 
-    private static final String CRLF = System.getProperty("line.separator");
-    
     private final MantisIssueUpdater property;
 
     Updater(final MantisIssueUpdater property) {
         this.property = property;
     }
 
-    boolean perform(final AbstractBuild<?, ?> build, final BuildListener listener) throws MantisHandlingException {
+    boolean perform(final AbstractBuild<?, ?> build, final BuildListener listener)
+            throws MantisHandlingException, InterruptedException {
 
         final PrintStream logger = listener.getLogger();
 
@@ -61,22 +62,34 @@ final class Updater {
         final boolean update = !build.getResult().isWorseThan(Result.UNSTABLE);
         if (!update) {
             Utility.log(logger, Messages.Updater_KeepMantisIssueIdsForNextBuild());
-            //build.addAction(new MantisCarryOverChangeSetAction(chnageSets));
+            if (property.isCheckin()) {
+                final List<ChangeSet> changeSets = findChangeSets(build);
+                if (!changeSets.isEmpty()) {
+                    build.addAction(new MantisCarryOverChangeSetAction(changeSets));
+                }
+            }
             return true;
         }
+
+        //one check-in per referenced issue, whether the version is released or not
+        if (property.isCheckin()) {
+            final IssueCheckins checkins = new IssueCheckins(findChangeSets(build));
+            if (!checkins.isEmpty()) {
+                checkins.send(site, createUpdateText(build, rootUrl), property.isDryRun(), logger);
+            }
+        }
+
         String projectVersion;
         String projectDescription;
-        String issuesList;
+        final List<ReleaseEntry.Issue> releasedIssues = new ArrayList<ReleaseEntry.Issue>();
         
         //Release operations on Mantis  (todo: member isKeepNotePrivate to rename to activateMantisOperations)
         if (this.property.isKeepNotePrivate())  
         {
             Utility.log(logger, Messages.tjd_monmsg("Performing mantis operations..." ));    
 
-            final List<ChangeSet> chnageSets = new ArrayList<ChangeSet>(); 
-
             MantisProjectProperty mpp = MantisProjectProperty.get(build);
-            int projectId = mpp.getProjectId();
+            final List<MantisSiteTarget> targets = mpp.getSiteTargets();
                         
             if (build.getBuildVariables().get("Maintenance") != null)
                 projectVersion = build.getBuildVariables().get("Majeure")+"."+build.getBuildVariables().get("Mineure")+"."+build.getBuildVariables().get("Maintenance");
@@ -85,64 +98,29 @@ final class Updater {
             
             projectDescription = build.getBuildVariables().get("Description");
 
-            //Get issues for the selected project and the target version
-            hudson.plugins.mantis.soap.mantis120.IssueHeaderData[] issuesHeaders = null;
-            issuesHeaders = site.tjd_getTargetVersionIssues(projectId, projectVersion, logger);
-
-
-            issuesList = "";  //will be used later for the changelog update
-            //Browse all issues for this project and this version (as target version) to check that all are either validated either resolved
-            for (hudson.plugins.mantis.soap.mantis120.IssueHeaderData header : issuesHeaders) {   
-                if (header.getProject().intValue() == projectId)  //!!bug mantis api!! : filter on project id is not taken into account... so here it is
-                {
-                    if (header.getStatus().intValue() < 80)   
-                    {
-                        Utility.log(logger, Messages.tjd_monmsg("ERROR  The issue [" + header.getId().toString() + "] is neither resolved nor validated... Satus is lower than 80..." ));
-                        build.setResult(Result.FAILURE);                
-                    }
-                    else
-                    {
-                        chnageSets.add(ChangeSetFactory.newInstance(header.getId().intValue()));            
-                        issuesList =  issuesList + "," + header.getId().toString();  
-                    }
-                }
+            final List<ReleaseEntry.Issue> released;
+            if (targets.size() == 1) {
+                released = release(build, site, null, mpp.getProjectId(), projectVersion, projectDescription, logger);
+            } else {
+                released = releaseConcurrently(build, site, targets, projectVersion, projectDescription, logger);
             }
-            if (issuesList.length() > 1)
-                issuesList = issuesList.substring(1);  //first comma removal
-
-
-
-            //Release version on mantis
-            BigInteger releasableVersion = site.checkProjectVersionReleasable(BigInteger.valueOf(projectId), projectVersion);
-            if (releasableVersion != null)
-            {
-                MantisProjectVersion mpv = new MantisProjectVersion(BigInteger.valueOf(projectId), releasableVersion, 
-                                            projectVersion, projectDescription + "\n" + Messages.MantisVersionRegister_VersionDescription(), true);
-                site.updateProjectVersion2(mpv, logger);
+            if (released == null) {
+                build.setResult(Result.FAILURE);
+                return true;
             }
-            else
-            {
-                Utility.log(logger, Messages.tjd_monmsg("ERROR  The version [" + projectVersion + "] is not releasable on Mantis..." ));
-                build.setResult(Result.FAILURE);                
-            }    
-
-            //if some issues are neither resolved neither validated, or if the version is not releasable on mantis, we stop here
-            if (build.getResult() == Result.FAILURE)
+            if (property.isDryRun()) {
                 return true;
+            }
+            releasedIssues.addAll(released);
 
-
-            //Browse the issues list to update them, one by one (close+comment)
-            for (final ChangeSet changeSet : chnageSets) {
-                try {  
-                    if (update) {
-                        site.updateIssue(changeSet.getId(), projectVersion, property.isKeepNotePrivate(), 90, logger);
-                        Utility.log(logger, Messages.Updater_Updating(changeSet.getId()));
-                    }
-                } catch (final MantisHandlingException e) {
-                    Utility.log(logger, Messages.Updater_FailedToAddNote(changeSet, e.getMessage()));
-                    LOGGER.log(Level.WARNING, Messages.Updater_FailedToAddNote_StarckTrace(changeSet), e);
+            final BuildAttachments attachments = property.getAttachments();
+            if (!attachments.isEmpty() && !released.isEmpty()) {
+                final List<Integer> ids = new ArrayList<Integer>();
+                for (final ReleaseEntry.Issue issue : released) {
+                    ids.add(issue.getId());
                 }
-            } 
+                attachments.attach(site, build, ids, logger);
+            }
         }
         else
         {
@@ -154,15 +132,22 @@ final class Updater {
         if (this.property.isRecordChangelog())  
         {
             Utility.log(logger, Messages.tjd_monmsg("Updating changelog File..." ));        
+            final FilePath workspace = build.getParent().getSomeWorkspace();
+            if (workspace == null) {
+                Utility.log(logger, Messages.Updater_NoWorkspace());
+                return true;
+            }
+            final ReleaseEntry entry = new ReleaseEntry(build.getProject().getName(), projectVersion,
+                    build.getBuildVariables().get("Revision"), build.getNumber(), build.getTime(), releasedIssues);
             try {
-                String log = "\r\n[Release] " + build.getProject().getName() + "-" + projectVersion + " \r\nFrom svn://foxserver/trunk/" + build.getProject().getName() + " rev " + build.getBuildVariables().get("Revision") + " \r\n";
-                log = log + "Issue: " + issuesList;
-                //Files.write(Paths.get(build.getParent().getBuildDir().toString() + "\\ChangeLog2.txt"), log.getBytes(), StandardOpenOption.APPEND);
-                //Files.write(Paths.get(build.getParent().getWorkspace().toString() + "\\ChangeLog3.txt"), log.getBytes(), StandardOpenOption.APPEND);
-                Files.write(Paths.get(build.getParent().getSomeWorkspace() + "\\ChangeLog.txt"), log.getBytes(), StandardOpenOption.APPEND);
-
-            }catch (IOException e) {
+                final FilePath changelog = new ChangeLogWriter(property.getChangelogFormat(),
+                        property.getChangelogMaxSize() * 1024L).write(workspace, entry);
+                Utility.log(logger, Messages.Updater_ChangelogUpdated(changelog.getRemote()));
+            } catch (IOException e) {
                 Utility.log(logger, Messages.tjd_monmsg(e.getMessage() ));
+            } catch (InterruptedException e) {
+                Utility.log(logger, Messages.tjd_monmsg(e.getMessage() ));
+                Thread.currentThread().interrupt();
             }
         }
         else
@@ -179,19 +164,136 @@ final class Updater {
         return true;
     }
 
-    private String createUpdateText(final AbstractBuild<?, ?> build, final ChangeSet changeSet, final String rootUrl) {
+    /**
+     * Plans and applies the release on one site, logging to the given logger.
+     * @param siteName the site, or null for the main site of the job
+     * @return the released issues, or null if the release failed.
+     */
+    private List<ReleaseEntry.Issue> release(final AbstractBuild<?, ?> build, final MantisSite site,
+            final String siteName, final int projectId, final String projectVersion, final String projectDescription,
+            final PrintStream logger) throws MantisHandlingException {
+        final ReleasePlan plan = new ReleasePlanner(site).plan(
+                projectId, projectVersion, projectDescription, property.isKeepNotePrivate(), logger);
+        Utility.log(logger, Messages.Updater_Preflight(plan.getPreflightMillis()));
+        final MantisReleaseAction action = new MantisReleaseAction(siteName, projectVersion, plan.getPreflightMillis());
+        build.addAction(action);
+        plan.describe(logger);
+
+        //if some issues are neither resolved neither validated, or if the version is not releasable on mantis, we stop here
+        //before any mutation
+        if (!plan.isApplicable()) {
+            return null;
+        }
+
+        if (property.isDryRun()) {
+            action.dryRun();
+            Utility.log(logger, Messages.Updater_DryRun());
+            return new ArrayList<ReleaseEntry.Issue>();
+        }
+
+        final ReleaseJournal journal;
+        try {
+            journal = ReleaseJournal.open(build.getParent().getRootDir(), siteName, projectId, projectVersion,
+                    build.getNumber());
+        } catch (IOException e) {
+            Utility.log(logger, Messages.Updater_JournalUnavailable(e.getMessage()));
+            return null;
+        }
+        if (journal.isResumed()) {
+            Utility.log(logger, Messages.Updater_ResumingRelease(projectVersion, journal.getBuilds().get(0)));
+        }
+
+        //close the issues (status+fixed in version+note), then release the version
+        final ReleaseResult result = new ReleaseExecutor(site).apply(plan, journal, logger);
+        action.applied(result);
+        Utility.log(logger, Messages.Updater_Applied(result.getApplyMillis(), result.getClosedIssues().size(),
+                result.getSkippedIssues().size() + result.getResumedIssues().size(),
+                result.getFailedIssues().size()));
+        if (!result.isVersionReleased()) {
+            return null;
+        }
+        final List<ReleaseEntry.Issue> released = new ArrayList<ReleaseEntry.Issue>();
+        for (final ReleasePlan.IssueChange change : plan.getIssueChanges()) {
+            //will be used later for the changelog update
+            released.add(new ReleaseEntry.Issue(change.getId(), change.getSummary()));
+        }
+        return released;
+    }
+
+    /**
+     * Releases on every site at the same time. The log of each site is buffered and
+     * copied to the build log in the order of the sites. The build fails if the release
+     * failed on any site, but the changelog and attachments of the main site still follow its own outcome.
+     * @return the issues released on the main site, or null if the release failed on it.
+     */
+    private List<ReleaseEntry.Issue> releaseConcurrently(final AbstractBuild<?, ?> build, final MantisSite main,
+            final List<MantisSiteTarget> targets, final String projectVersion, final String projectDescription,
+            final PrintStream logger) throws InterruptedException {
+        final long start = System.nanoTime();
+        final List<Future<List<ReleaseEntry.Issue>>> futures = new ArrayList<Future<List<ReleaseEntry.Issue>>>();
+        final List<ByteArrayOutputStream> logs = new ArrayList<ByteArrayOutputStream>();
+        for (int i = 0; i < targets.size(); i++) {
+            final MantisSiteTarget target = targets.get(i);
+            final MantisSite site = i == 0 ? main : target.getSite();
+            final String siteName = i == 0 ? null : target.getSiteName();
+            final ByteArrayOutputStream log = new ByteArrayOutputStream();
+            final PrintStream siteLogger = new PrintStream(log, true);
+            logs.add(log);
+            futures.add(MantisExecutor.get().submit(new Callable<List<ReleaseEntry.Issue>>() {
+                public List<ReleaseEntry.Issue> call() throws MantisHandlingException {
+                    Utility.log(siteLogger, Messages.Updater_ReleasingOnSite(
+                            site != null ? site.getName() : target.getSiteName(), target.getProjectId()));
+                    if (site == null) {
+                        Utility.log(siteLogger, Messages.Updater_NoMantisSite());
+                        return null;
+                    }
+                    return release(build, site, siteName, target.getProjectId(), projectVersion,
+                            projectDescription, siteLogger);
+                }
+            }));
+        }
+
+        List<ReleaseEntry.Issue> released = null;
+        int succeeded = 0;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                List<ReleaseEntry.Issue> issues;
+                try {
+                    issues = MantisExecutor.await(futures.get(i));
+                } catch (final MantisHandlingException e) {
+                    issues = null;
+                    LOGGER.log(Level.WARNING, Messages.Updater_SiteFailed(targets.get(i).getSiteName(),
+                            e.getMessage()), e);
+                    Utility.log(new PrintStream(logs.get(i), true),
+                            Messages.Updater_SiteFailed(targets.get(i).getSiteName(), e.getMessage()));
+                }
+                final byte[] log = logs.get(i).toByteArray();
+                logger.write(log, 0, log.length);
+                if (issues != null) {
+                    succeeded++;
+                }
+                if (i == 0) {
+                    released = issues;
+                }
+            }
+        } finally {
+            for (final Future<List<ReleaseEntry.Issue>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        Utility.log(logger, Messages.Updater_SitesReleased(succeeded, targets.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        if (succeeded < targets.size()) {
+            build.setResult(Result.FAILURE);
+        }
+        return released;
+    }
+
+    private String createUpdateText(final AbstractBuild<?, ?> build, final String rootUrl) {
         final String prjName = build.getProject().getName();
         final int prjNumber = build.getNumber();
         final String url = rootUrl + build.getUrl();
-
-        final StringBuilder text = new StringBuilder();
-        text.append(Messages.Updater_IssueIntegrated(prjName, prjNumber, url));
-        text.append(CRLF).append(CRLF);
-        
-        if (property.isRecordChangelog()) {
-            text.append(changeSet.createChangeLog());
-        }
-        return text.toString();
+        return Messages.Updater_IssueIntegrated(prjName, prjNumber, url);
     }
 
     private List<ChangeSet> findChangeSets(final AbstractBuild<?, ?> build) {
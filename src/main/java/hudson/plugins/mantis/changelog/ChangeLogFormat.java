@@ -0,0 +1,116 @@
+package hudson.plugins.mantis.changelog;
+
+import hudson.plugins.mantis.Messages;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import net.sf.json.JSONObject;
+
+/**
+ * Output formats of the release changelog.
+ */
+public enum ChangeLogFormat {
+
+    /**
+     * the historical format: one block per release with the comma separated issue ids.
+     */
+    TEXT(Messages.ChangeLogFormat_Text(), "ChangeLog.txt") {
+
+        @Override
+        void write(final ReleaseEntry entry, final Writer out) throws IOException {
+            out.write(CRLF + "[Release] " + entry.getJobName() + "-" + entry.getVersion() + " " + CRLF);
+            out.write("From svn://foxserver/trunk/" + entry.getJobName() + " rev " + entry.getRevision() + " " + CRLF);
+            out.write("Issue: ");
+            boolean first = true;
+            for (final ReleaseEntry.Issue issue : entry.getIssues()) {
+                if (!first) {
+                    out.write(',');
+                }
+                out.write(String.valueOf(issue.getId()));
+                first = false;
+            }
+        }
+    },
+
+    MARKDOWN(Messages.ChangeLogFormat_Markdown(), "ChangeLog.md") {
+
+        @Override
+        void write(final ReleaseEntry entry, final Writer out) throws IOException {
+            out.write(CRLF + "## " + entry.getJobName() + " " + entry.getVersion() + CRLF + CRLF);
+            out.write("Build #" + entry.getBuildNumber() + ", " + formatDate(entry)
+                    + ", revision " + entry.getRevision() + CRLF + CRLF);
+            for (final ReleaseEntry.Issue issue : entry.getIssues()) {
+                out.write("- #" + issue.getId() + " " + nullToEmpty(issue.getSummary()) + CRLF);
+            }
+        }
+    },
+
+    JSON_LINES(Messages.ChangeLogFormat_JsonLines(), "ChangeLog.jsonl") {
+
+        @Override
+        void write(final ReleaseEntry entry, final Writer out) throws IOException {
+            final Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("job", entry.getJobName());
+            map.put("version", entry.getVersion());
+            map.put("build", entry.getBuildNumber());
+            map.put("revision", entry.getRevision());
+            map.put("date", formatDate(entry));
+            final List<Map<String, Object>> issues = new ArrayList<Map<String, Object>>();
+            for (final ReleaseEntry.Issue issue : entry.getIssues()) {
+                final Map<String, Object> i = new LinkedHashMap<String, Object>();
+                i.put("id", issue.getId());
+                i.put("summary", nullToEmpty(issue.getSummary()));
+                issues.add(i);
+            }
+            map.put("issues", issues);
+            out.write(JSONObject.fromObject(map).toString());
+            out.write('\n');
+        }
+    };
+
+    private static final String CRLF = "\r\n";
+
+    private final String displayName;
+
+    private final String fileName;
+
+    private ChangeLogFormat(final String displayName, final String fileName) {
+        this.displayName = displayName;
+        this.fileName = fileName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    abstract void write(ReleaseEntry entry, Writer out) throws IOException;
+
+    public static ChangeLogFormat getFormatSafely(final String name, final ChangeLogFormat def) {
+        for (final ChangeLogFormat f : values()) {
+            if (f.name().equalsIgnoreCase(name)) {
+                return f;
+            }
+        }
+        return def;
+    }
+
+    private static String formatDate(final ReleaseEntry entry) {
+        final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getDefault());
+        return format.format(entry.getDate());
+    }
+
+    private static String nullToEmpty(final String s) {
+        return s == null ? "" : s;
+    }
+}
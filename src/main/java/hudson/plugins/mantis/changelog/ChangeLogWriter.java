@@ -0,0 +1,179 @@
+package hudson.plugins.mantis.changelog;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Appends release entries to the changelog file of a workspace.
+ * The file is written on the node holding the workspace, under a per-file lock,
+ * and is rotated (ChangeLog.txt -> ChangeLog.1.txt -> ...) when it grows too large.
+ */
+public final class ChangeLogWriter {
+
+    /**
+     * number of rotated files kept.
+     */
+    public static final int KEEP = 5;
+
+    private final ChangeLogFormat format;
+
+    private final long maxBytes;
+
+    /**
+     * @param format output format
+     * @param maxBytes size above which the file is rotated, 0 means never.
+     */
+    public ChangeLogWriter(final ChangeLogFormat format, final long maxBytes) {
+        this.format = format;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the changelog file written.
+     */
+    public FilePath write(final FilePath workspace, final ReleaseEntry entry)
+            throws IOException, InterruptedException {
+        final StringWriter text = new StringWriter();
+        format.write(entry, text);
+        final FilePath target = workspace.child(format.getFileName());
+        target.act(new Append(text.toString(), maxBytes, KEEP));
+        return target;
+    }
+
+    /**
+     * Runs where the file is.
+     */
+    private static final class Append extends MasterToSlaveFileCallable<Void> {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * locks of the files being written by this JVM, dropped once no one writes them.
+         * FileLock only protects against other processes.
+         */
+        private static final Map<String, Users> LOCKS = new HashMap<String, Users>();
+
+        private final String text;
+
+        private final long maxBytes;
+
+        private final int keep;
+
+        Append(final String text, final long maxBytes, final int keep) {
+            this.text = text;
+            this.maxBytes = maxBytes;
+            this.keep = keep;
+        }
+
+        public Void invoke(final File file, final VirtualChannel channel) throws IOException {
+            final File dir = file.getAbsoluteFile().getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Failed to create " + dir);
+            }
+            final String key = file.getAbsolutePath();
+            final Users users = lock(key);
+            try {
+                synchronized (users) {
+                    final RandomAccessFile lockFile = new RandomAccessFile(new File(dir, "." + file.getName() + ".lock"), "rw");
+                    try {
+                        final FileLock lock = lockFile.getChannel().lock();
+                        try {
+                            if (maxBytes > 0 && file.length() > 0 && file.length() >= maxBytes) {
+                                rotate(file);
+                            }
+                            final Writer out = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+                            try {
+                                out.write(text);
+                            } finally {
+                                out.close();
+                            }
+                        } finally {
+                            lock.release();
+                        }
+                    } finally {
+                        lockFile.close();
+                    }
+                }
+            } finally {
+                unlock(key, users);
+            }
+            return null;
+        }
+
+        private void rotate(final File file) throws IOException {
+            final File oldest = rotated(file, keep);
+            if (oldest.exists() && !oldest.delete()) {
+                throw new IOException("Failed to delete " + oldest);
+            }
+            for (int i = keep - 1; i >= 1; i--) {
+                final File f = rotated(file, i);
+                if (f.exists() && !f.renameTo(rotated(file, i + 1))) {
+                    throw new IOException("Failed to rotate " + f);
+                }
+            }
+            if (!file.renameTo(rotated(file, 1))) {
+                throw new IOException("Failed to rotate " + file);
+            }
+        }
+
+        private static File rotated(final File file, final int n) {
+            final String name = file.getName();
+            final int dot = name.lastIndexOf('.');
+            if (dot < 0) {
+                return new File(file.getParentFile(), name + "." + n);
+            }
+            return new File(file.getParentFile(), name.substring(0, dot) + "." + n + name.substring(dot));
+        }
+
+        private static Users lock(final String key) {
+            synchronized (LOCKS) {
+                Users users = LOCKS.get(key);
+                if (users == null) {
+                    users = new Users();
+                    LOCKS.put(key, users);
+                }
+                users.count++;
+                return users;
+            }
+        }
+
+        private static void unlock(final String key, final Users users) {
+            synchronized (LOCKS) {
+                if (--users.count == 0) {
+                    LOCKS.remove(key);
+                }
+            }
+        }
+
+        static int lockedFiles() {
+            synchronized (LOCKS) {
+                return LOCKS.size();
+            }
+        }
+
+        /**
+         * Threads writing or waiting to write a file, guarded by {@link #LOCKS}.
+         */
+        private static final class Users {
+            int count;
+        }
+    }
+
+    /**
+     * @return number of files being written by this JVM.
+     */
+    static int lockedFiles() {
+        return Append.lockedFiles();
+    }
+}
@@ -0,0 +1,81 @@
+package hudson.plugins.mantis.changelog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * One release recorded in the changelog.
+ */
+public final class ReleaseEntry {
+
+    private final String jobName;
+
+    private final String version;
+
+    private final String revision;
+
+    private final int buildNumber;
+
+    private final Date date;
+
+    private final List<Issue> issues;
+
+    public ReleaseEntry(final String jobName, final String version, final String revision,
+            final int buildNumber, final Date date, final List<Issue> issues) {
+        this.jobName = jobName;
+        this.version = version;
+        this.revision = revision;
+        this.buildNumber = buildNumber;
+        this.date = new Date(date.getTime());
+        this.issues = Collections.unmodifiableList(new ArrayList<Issue>(issues));
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public Date getDate() {
+        return new Date(date.getTime());
+    }
+
+    public List<Issue> getIssues() {
+        return issues;
+    }
+
+    /**
+     * Issue closed by the release.
+     */
+    public static final class Issue {
+
+        private final int id;
+
+        private final String summary;
+
+        public Issue(final int id, final String summary) {
+            this.id = id;
+            this.summary = summary;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getSummary() {
+            return summary;
+        }
+    }
+}
@@ -23,6 +23,10 @@ public final class MantisIssue implements Serializable {
     
     private MantisViewState viewState;
 
+    private String targetVersion;
+
+    private String fixedInVersion;
+
     public int getId() {
         return id;
     }
@@ -48,10 +52,28 @@ public final class MantisIssue implements Serializable {
         this.summary = summary;
     }
 
+    /**
+     * @param targetVersion null if unknown.
+     * @param fixedInVersion null if unknown.
+     */
+    public MantisIssue(final int id, final String summary, final String targetVersion, final String fixedInVersion) {
+        this(id, summary);
+        this.targetVersion = targetVersion;
+        this.fixedInVersion = fixedInVersion;
+    }
+
     public MantisViewState getViewState() {
         return viewState;
     }
 
+    public String getTargetVersion() {
+        return targetVersion;
+    }
+
+    public String getFixedInVersion() {
+        return fixedInVersion;
+    }
+
     public MantisIssue(MantisProject project, MantisCategory category, String summary, 
             String description, MantisViewState viewState) {
         this.summary = summary;
@@ -0,0 +1,85 @@
+package hudson.plugins.mantis.model;
+
+import java.io.Serializable;
+
+/**
+ * Lightweight header of an issue, as returned by issue searches, or read from the issues of a project.
+ */
+public final class MantisIssueHeader implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+
+    private final int projectId;
+
+    private final int status;
+
+    private final String summary;
+
+    /**
+     * last update, in milliseconds since the epoch, 0 if unknown.
+     */
+    private final long lastUpdated;
+
+    /**
+     * null if unknown, issue searches do not return it.
+     */
+    private final String targetVersion;
+
+    /**
+     * null if unknown, issue searches do not return it.
+     */
+    private final String fixedInVersion;
+
+    public MantisIssueHeader(final int id, final int projectId, final int status, final String summary,
+            final long lastUpdated) {
+        this(id, projectId, status, summary, lastUpdated, null, null);
+    }
+
+    public MantisIssueHeader(final int id, final int projectId, final int status, final String summary,
+            final long lastUpdated, final String targetVersion, final String fixedInVersion) {
+        this.id = id;
+        this.projectId = projectId;
+        this.status = status;
+        this.summary = summary;
+        this.lastUpdated = lastUpdated;
+        this.targetVersion = targetVersion;
+        this.fixedInVersion = fixedInVersion;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getProjectId() {
+        return projectId;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getSummary() {
+        return summary;
+    }
+
+    public long getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public String getTargetVersion() {
+        return targetVersion;
+    }
+
+    public String getFixedInVersion() {
+        return fixedInVersion;
+    }
+
+    /**
+     * @return true if the target and fixed versions are known.
+     */
+    public boolean hasVersions() {
+        return targetVersion != null && fixedInVersion != null;
+    }
+}
@@ -0,0 +1,140 @@
+package hudson.plugins.mantis.scripts;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * OutputStream which keeps at most {@code limit} bytes in memory and spills
+ * the complete content to a temporary file once the limit is exceeded.
+ */
+final class BoundedContentOutputStream extends OutputStream {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final int limit;
+
+    private final ByteArrayOutputStream head;
+
+    private long count;
+
+    private File spillFile;
+
+    private OutputStream spill;
+
+    BoundedContentOutputStream(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit should be positive.");
+        }
+        this.limit = limit;
+        this.head = new ByteArrayOutputStream(Math.min(limit, INITIAL_BUFFER_SIZE));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len <= 0) {
+            return;
+        }
+        int room = (int) Math.max(0, limit - count);
+        if (len > room && spill == null) {
+            openSpill();
+        }
+        if (room > 0) {
+            head.write(b, off, Math.min(room, len));
+        }
+        if (spill != null) {
+            spill.write(b, off, len);
+        }
+        count += len;
+    }
+
+    private void openSpill() throws IOException {
+        spillFile = File.createTempFile("mantis-description", ".txt");
+        spill = new BufferedOutputStream(new FileOutputStream(spillFile));
+        // everything written so far is in the head buffer
+        head.writeTo(spill);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (spill != null) {
+            spill.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    /**
+     * @return total number of bytes written, including the spilled part.
+     */
+    long getCount() {
+        return count;
+    }
+
+    boolean isTruncated() {
+        return count > limit;
+    }
+
+    /**
+     * @return the file holding the complete content, or null if nothing was spilled.
+     */
+    File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * Decodes the in-memory head, cutting it at a UTF-8 character boundary
+     * when the content was truncated.
+     */
+    String getHead() {
+        byte[] bytes = head.toByteArray();
+        int end = bytes.length;
+        if (isTruncated()) {
+            // step back over continuation bytes (10xxxxxx) and the lead byte
+            // of a sequence that did not fit.
+            int i = end;
+            while (i > 0 && (bytes[i - 1] & 0xC0) == 0x80) {
+                i--;
+            }
+            if (i > 0 && (bytes[i - 1] & 0x80) != 0) {
+                int lead = bytes[i - 1] & 0xFF;
+                int expected = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : 2;
+                if (end - (i - 1) < expected) {
+                    end = i - 1;
+                }
+            }
+        }
+        return new String(bytes, 0, end, UTF_8);
+    }
+
+    /**
+     * Closes and deletes the spill file, if any.
+     */
+    void discard() {
+        try {
+            close();
+        } catch (IOException e) {
+            // ignore
+        }
+        if (spillFile != null && !spillFile.delete()) {
+            spillFile.deleteOnExit();
+        }
+        spillFile = null;
+    }
+}
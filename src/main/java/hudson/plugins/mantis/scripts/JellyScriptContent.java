@@ -3,12 +3,14 @@ package hudson.plugins.mantis.scripts;
 import hudson.model.AbstractBuild;
 import hudson.model.Hudson;
 import hudson.model.Result;
+import hudson.plugins.mantis.Messages;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.io.IOUtils;
@@ -45,6 +47,28 @@ public class JellyScriptContent implements ScriptContent {
         }
     }
 
+    /**
+     * Renders the template keeping at most {@code maxBytes} bytes in memory.
+     * When the content is larger, the text is truncated with a marker and the
+     * complete content is kept in {@link RenderedContent#getOverflowFile()}.
+     */
+    public RenderedContent render(AbstractBuild<?, ?> build, Result result, int maxBytes)
+            throws IOException, InterruptedException {
+        InputStream inputStream = null;
+        String templateName = result.toString().toLowerCase();
+        try {
+            inputStream = getTemplateInputStream(templateName);
+            return renderBoundedContent(build, inputStream, maxBytes);
+        } catch (JellyException e) {
+            LOGGER.log(Level.WARNING, "failed to parse jelly template.", e);
+            return new RenderedContent("JellyException: " + e.getMessage(), 0, 0, null);
+        } catch (FileNotFoundException e) {
+            return new RenderedContent(generateMissingTemplate(templateName), 0, 0, null);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
     private String generateMissingTemplate(String template) {
         return "Jelly script [" + template + "] was not found";
     }
@@ -91,6 +115,45 @@ public class JellyScriptContent implements ScriptContent {
         return output.toString();
     }
 
+    private RenderedContent renderBoundedContent(AbstractBuild<?, ?> build, InputStream inputStream,
+            int maxBytes) throws JellyException, IOException {
+        JellyContext context = createContext(new ScriptContentBuildWrapper(build), build);
+        Script script = context.compileScript(new InputSource(inputStream));
+        if (script == null) {
+            return new RenderedContent("", 0, 0, null);
+        }
+
+        long start = System.nanoTime();
+        BoundedContentOutputStream output = new BoundedContentOutputStream(maxBytes);
+        XMLOutput xmlOutput = null;
+        boolean completed = false;
+        try {
+            xmlOutput = XMLOutput.createXMLOutput(output);
+            script.run(context, xmlOutput);
+            xmlOutput.flush();
+            completed = true;
+        } finally {
+            try {
+                if (xmlOutput != null) {
+                    xmlOutput.close();
+                }
+            } finally {
+                output.close();
+                if (!completed) {
+                    output.discard();
+                }
+            }
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        String text = output.getHead();
+        if (output.isTruncated()) {
+            text = text + Messages.JellyScriptContent_Truncated(
+                    maxBytes, output.getCount(), RenderedContent.OVERFLOW_ATTACHMENT_NAME);
+        }
+        return new RenderedContent(text, output.getCount(), millis, output.getSpillFile());
+    }
+
     private JellyContext createContext(Object it, AbstractBuild<?, ?> build) {
         JellyContext context = new JellyContext();
         context.setVariable("it", it);
@@ -0,0 +1,117 @@
+package hudson.plugins.mantis.scripts;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the last lines of a log, scanning it backwards from its end, so that the cost depends on
+ * the size of the excerpt and not on the size of the log.
+ */
+public final class LogTail {
+
+    private static final int BLOCK_SIZE = 8192;
+
+    /**
+     * lines reporting an error.
+     */
+    public static final Pattern ERROR_LINE = Pattern.compile("(?i)\\b(error|exception|failed|failure|fatal)\\b");
+
+    /**
+     * separates two windows of {@link #errorWindows}.
+     */
+    public static final String GAP = "...";
+
+    private LogTail() {
+        //
+    }
+
+    /**
+     * @param maxBytes bytes read at most from the end of the file; a line cut by this limit is dropped.
+     * @return the last lines of the file, at most {@code maxLines}.
+     */
+    public static List<String> read(final File file, final Charset charset, final int maxBytes, final int maxLines)
+            throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final long end = raf.length();
+            final long start = Math.max(0, end - maxBytes);
+            if (end == 0 || maxLines <= 0) {
+                return new ArrayList<String>();
+            }
+            raf.seek(end - 1);
+            // a line separator ending the file does not start another line
+            final long last = raf.read() == '\n' ? end - 1 : end;
+
+            final byte[] block = new byte[BLOCK_SIZE];
+            long from = -1;
+            long pos = end;
+            int separators = 0;
+            scan:
+            while (pos > start) {
+                final int n = (int) Math.min(BLOCK_SIZE, pos - start);
+                pos -= n;
+                raf.seek(pos);
+                raf.readFully(block, 0, n);
+                for (int i = n - 1; i >= 0; i--) {
+                    if (block[i] == '\n' && pos + i < last && ++separators == maxLines) {
+                        from = pos + i + 1;
+                        break scan;
+                    }
+                }
+            }
+            final boolean cut = from < 0 && start > 0;
+            if (from < 0) {
+                from = start;
+            }
+
+            final byte[] tail = new byte[(int) (last - from)];
+            raf.seek(from);
+            raf.readFully(tail);
+            final List<String> lines = new ArrayList<String>(Arrays.asList(new String(tail, charset).split("\n", -1)));
+            if (cut) {
+                lines.remove(0);
+            }
+            for (int i = 0; i < lines.size(); i++) {
+                final String line = lines.get(i);
+                if (line.endsWith("\r")) {
+                    lines.set(i, line.substring(0, line.length() - 1));
+                }
+            }
+            return lines;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Keeps the lines matching the pattern with {@code context} lines before and after them.
+     * Windows which overlap are merged, the others are separated by {@link #GAP}.
+     */
+    public static List<String> errorWindows(final List<String> lines, final Pattern pattern, final int context) {
+        final boolean[] keep = new boolean[lines.size()];
+        for (int i = 0; i < lines.size(); i++) {
+            if (pattern.matcher(lines.get(i)).find()) {
+                for (int j = Math.max(0, i - context); j <= Math.min(lines.size() - 1, i + context); j++) {
+                    keep[j] = true;
+                }
+            }
+        }
+        final List<String> window = new ArrayList<String>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (!keep[i]) {
+                continue;
+            }
+            if (!window.isEmpty() && !keep[i - 1]) {
+                window.add(GAP);
+            }
+            window.add(lines.get(i));
+        }
+        return window;
+    }
+}
@@ -0,0 +1,70 @@
+package hudson.plugins.mantis.scripts;
+
+import java.io.File;
+
+/**
+ * Result of a bounded rendering.
+ * The text holds at most the configured number of bytes; when the rendered content
+ * was larger, the complete content is kept in a temporary file until {@link #dispose()}.
+ */
+public final class RenderedContent {
+
+    /**
+     * Name used when the complete content is attached to an issue.
+     */
+    public static final String OVERFLOW_ATTACHMENT_NAME = "description.txt";
+
+    private final String text;
+
+    private final long renderedSize;
+
+    private final long renderMillis;
+
+    private File overflowFile;
+
+    RenderedContent(String text, long renderedSize, long renderMillis, File overflowFile) {
+        this.text = text;
+        this.renderedSize = renderedSize;
+        this.renderMillis = renderMillis;
+        this.overflowFile = overflowFile;
+    }
+
+    /**
+     * @return the (possibly truncated) text, ending with a truncation marker if truncated.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return size of the complete rendered content in bytes.
+     */
+    public long getRenderedSize() {
+        return renderedSize;
+    }
+
+    public long getRenderMillis() {
+        return renderMillis;
+    }
+
+    public boolean isTruncated() {
+        return overflowFile != null;
+    }
+
+    /**
+     * @return the file holding the complete content, or null if not truncated.
+     */
+    public File getOverflowFile() {
+        return overflowFile;
+    }
+
+    /**
+     * Deletes the temporary file holding the complete content.
+     */
+    public void dispose() {
+        if (overflowFile != null && !overflowFile.delete()) {
+            overflowFile.deleteOnExit();
+        }
+        overflowFile = null;
+    }
+}
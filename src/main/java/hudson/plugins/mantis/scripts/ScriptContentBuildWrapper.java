@@ -1,6 +1,7 @@
 package hudson.plugins.mantis.scripts;
 
 import hudson.Functions;
+import hudson.console.ConsoleNote;
 import hudson.maven.reporters.SurefireAggregatedReport;
 import hudson.model.AbstractBuild;
 import hudson.model.Action;
@@ -8,11 +9,27 @@ import hudson.tasks.junit.TestResult;
 import hudson.tasks.junit.TestResultAction;
 import hudson.tasks.test.AggregatedTestResultAction;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class ScriptContentBuildWrapper {
 
+    private static final int TAIL_LINES = 50;
+
+    private static final int TAIL_BYTES = 64 * 1024;
+
+    /**
+     * errors are looked for in this many bytes at the end of the log.
+     */
+    private static final int ERROR_SCAN_BYTES = 256 * 1024;
+
+    private static final int ERROR_CONTEXT = 3;
+
+    private static final int ERROR_LINES = 100;
+
     private AbstractBuild<?, ?> build;
 
     public ScriptContentBuildWrapper(AbstractBuild<?, ?> build) {
@@ -32,6 +49,50 @@ public class ScriptContentBuildWrapper {
         return null;
     }
 
+    /**
+     * @return the last lines of the console log, read from its end whatever its size.
+     */
+    public String getLogTail() {
+        return getLogTail(TAIL_LINES);
+    }
+
+    public String getLogTail(int maxLines) {
+        return join(readLog(TAIL_BYTES, maxLines));
+    }
+
+    /**
+     * @return the error lines found at the end of the console log, with the lines around them.
+     */
+    public String getLogErrors() {
+        List<String> window = LogTail.errorWindows(readLog(ERROR_SCAN_BYTES, Integer.MAX_VALUE),
+                LogTail.ERROR_LINE, ERROR_CONTEXT);
+        if (window.size() > ERROR_LINES) {
+            window = window.subList(window.size() - ERROR_LINES, window.size());
+        }
+        return join(window);
+    }
+
+    private List<String> readLog(int maxBytes, int maxLines) {
+        try {
+            List<String> lines = LogTail.read(build.getLogFile(), build.getCharset(), maxBytes, maxLines);
+            for (int i = 0; i < lines.size(); i++) {
+                lines.set(i, ConsoleNote.removeNotes(lines.get(i)));
+            }
+            return lines;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to read the log of " + build, e);
+            return new ArrayList<String>();
+        }
+    }
+
+    private static String join(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        for (String line : lines) {
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+
     public Action getCoberturaAction() {
         return getAction("hudson.plugins.cobertura.CoberturaBuildAction");
     }
@@ -61,4 +122,6 @@ public class ScriptContentBuildWrapper {
         }
         return result;
     }
+
+    private static final Logger LOGGER = Logger.getLogger(ScriptContentBuildWrapper.class.getName());
 }
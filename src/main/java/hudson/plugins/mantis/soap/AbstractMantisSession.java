@@ -3,13 +3,27 @@ package hudson.plugins.mantis.soap;
 import hudson.plugins.mantis.MantisHandlingException;
 import hudson.plugins.mantis.MantisSite;
 import hudson.plugins.mantis.model.MantisIssue;
+import hudson.plugins.mantis.model.MantisIssueHeader;
 import hudson.plugins.mantis.model.MantisNote;
+import hudson.plugins.mantis.soap.mantis120.IssueHeaderData;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.axis.AxisEngine;
 import org.apache.axis.EngineConfiguration;
 import org.apache.axis.Handler;
 import org.apache.axis.SimpleChain;
 import org.apache.axis.SimpleTargetedChain;
+import org.apache.axis.client.AxisClient;
+import org.apache.axis.client.Stub;
 import org.apache.axis.configuration.SimpleProvider;
-import org.apache.axis.transport.http.HTTPSender;
+import org.apache.axis.transport.http.HTTPConstants;
 import org.apache.axis.transport.http.HTTPTransport;
 
 /**
@@ -22,13 +36,94 @@ public abstract class AbstractMantisSession implements MantisSession {
 
     protected MantisSite site;
 
+    /**
+     * Axis engines by stub package, transport and encoding. The generated stubs register their type
+     * mappings on each call, which puts them in the registry of the engine: the stubs of different
+     * Mantis versions map the same qualified names to different classes, so they never share an engine.
+     */
+    private static final ConcurrentMap<String, AxisClient> ENGINES = new ConcurrentHashMap<String, AxisClient>();
+
+    /**
+     * stubs by site. Sites are replaced, never changed, when reconfigured.
+     */
+    private static final Map<MantisSite, Stub> STUBS =
+            Collections.synchronizedMap(new WeakHashMap<MantisSite, Stub>());
+
     public abstract void addNote(int id, MantisNote note) throws MantisHandlingException;
 
     public abstract MantisIssue getIssue(int id) throws MantisHandlingException;
 
     public abstract String getVersion() throws MantisHandlingException;
 
-    protected EngineConfiguration createClientConfig() {
+    public boolean checkin(int id, String comment, boolean fixed) throws MantisHandlingException {
+        throw new MantisHandlingException("check-ins are not supported by this version of Mantis.");
+    }
+
+    public int addAttachment(int id, String name, String fileType, byte[] content)
+            throws MantisHandlingException {
+        throw new MantisHandlingException("attachments are not supported by this version of Mantis.");
+    }
+
+    public int addAttachment(int id, String name, String fileType, InputStream content, long length)
+            throws MantisHandlingException {
+        throw new MantisHandlingException("attachments are not supported by this version of Mantis.");
+    }
+
+    /**
+     * Runs the search through the stubs, which decode the whole response before
+     * the first header is handed to the handler.
+     */
+    public int searchIssueHeaders(int projectId, String targetVersion, IssueHeaderHandler handler,
+            PrintStream logger) throws MantisHandlingException {
+        final IssueHeaderData[] headers = tjd_getTargetVersionIssues(projectId, targetVersion, logger);
+        if (headers == null) {
+            return 0;
+        }
+        for (final IssueHeaderData header : headers) {
+            handler.header(new MantisIssueHeader(header.getId().intValue(), header.getProject().intValue(),
+                    header.getStatus().intValue(), header.getSummary(),
+                    header.getLast_updated() != null ? header.getLast_updated().getTimeInMillis() : 0));
+        }
+        return headers.length;
+    }
+
+    public List<Integer> searchIssueIds(int projectId, String targetVersion) throws MantisHandlingException {
+        throw new MantisHandlingException("id search is not supported by this version of Mantis.");
+    }
+
+    public List<MantisIssueHeader> getProjectIssueHeaders(int projectId, int page, int perPage)
+            throws MantisHandlingException {
+        throw new MantisHandlingException("issue headers are not supported by this version of Mantis.");
+    }
+
+    public MantisIssueHeader getIssueHeader(int id) throws MantisHandlingException {
+        throw new MantisHandlingException("issue headers are not supported by this version of Mantis.");
+    }
+
+    /**
+     * @return the Axis engine shared by every session of this Mantis version using the transport and
+     *         encoding of the site.
+     */
+    protected AxisClient getEngine() {
+        return getEngine(getClass().getPackage().getName(),
+                MantisTransport.get(site != null ? site.getTransport() : null),
+                site != null && site.isLeanEncoding());
+    }
+
+    static AxisClient getEngine(final String stubs, final MantisTransport transport, final boolean leanEncoding) {
+        final String key = stubs + ":" + transport.getId() + (leanEncoding ? ":lean" : ":plain");
+        AxisClient engine = ENGINES.get(key);
+        if (engine == null) {
+            final AxisClient created = new AxisClient(createClientConfig(transport, leanEncoding));
+            engine = ENGINES.putIfAbsent(key, created);
+            if (engine == null) {
+                engine = created;
+            }
+        }
+        return engine;
+    }
+
+    static EngineConfiguration createClientConfig(final MantisTransport transport, final boolean leanEncoding) {
         final SimpleProvider config = new SimpleProvider();
         final Handler handler = (Handler) new LogHandler();
         final SimpleChain reqChain = new SimpleChain();
@@ -37,10 +132,51 @@ public abstract class AbstractMantisSession implements MantisSession {
         reqChain.addHandler(handler);
         resChain.addHandler(handler);
 
-        final Handler pivot = (Handler) new HTTPSender();
-        final Handler transport = new SimpleTargetedChain(reqChain, pivot, resChain);
-        config.deployTransport(HTTPTransport.DEFAULT_TRANSPORT_NAME, transport);
+        final Handler pivot = transport.createPivot();
+        final Handler sender = new SimpleTargetedChain(reqChain, pivot, resChain);
+        config.deployTransport(HTTPTransport.DEFAULT_TRANSPORT_NAME, sender);
+
+        if (leanEncoding) {
+            // no href/id pairs for shared values, no xsi:type on every element
+            final Hashtable<String, Object> options = new Hashtable<String, Object>();
+            options.put(AxisEngine.PROP_DOMULTIREFS, Boolean.FALSE);
+            options.put(AxisEngine.PROP_SEND_XSI, Boolean.FALSE);
+            config.setGlobalOptions(options);
+        }
 
         return config;
     }
+
+    /**
+     * @return the stub previously built for this site, if it is of the given type.
+     */
+    protected <T> T getSharedStub(final Class<T> type) {
+        final Stub stub = STUBS.get(site);
+        return type.isInstance(stub) ? type.cast(stub) : null;
+    }
+
+    /**
+     * Keeps the stub for the next sessions of this site. It must be fully configured:
+     * the generated stubs are safe to call concurrently, but not to reconfigure.
+     */
+    protected void shareStub(final Stub stub) {
+        STUBS.put(site, stub);
+    }
+
+    /**
+     * Applies the compression settings of the site to the stub.
+     */
+    protected void configureStub(final Stub stub) {
+        if (site == null) {
+            return;
+        }
+        final MantisSite.Compression compression = site.getCompression();
+        if (compression != MantisSite.Compression.NONE) {
+            stub._setProperty(HTTPConstants.MC_ACCEPT_GZIP, Boolean.TRUE);
+        }
+        if (compression == MantisSite.Compression.ALL) {
+            stub._setProperty(HTTPConstants.MC_GZIP_REQUEST, Boolean.TRUE);
+        }
+        stub._setProperty(TransportStatistics.SITE_PROPERTY, site.getName());
+    }
 }
@@ -0,0 +1,33 @@
+package hudson.plugins.mantis.soap;
+
+import hudson.Extension;
+import hudson.plugins.mantis.Messages;
+import org.apache.axis.Handler;
+import org.apache.axis.transport.http.HTTPSender;
+
+/**
+ * The historical transport: Axis' own {@link HTTPSender}, one connection per call.
+ * It honours the gzip properties set on the stub, but keeps no byte counters.
+ */
+@Extension(ordinal = 100)
+public final class AxisTransport extends MantisTransport {
+
+    public static final String ID = "axis";
+
+    static final AxisTransport INSTANCE = new AxisTransport();
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.AxisTransport_DisplayName();
+    }
+
+    @Override
+    public Handler createPivot() {
+        return new HTTPSender();
+    }
+}
@@ -0,0 +1,56 @@
+package hudson.plugins.mantis.soap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Encodes a stream to base64 one chunk at a time, so that the content is never held whole in memory.
+ * Chunks are a multiple of 3 bytes long, so that only the last one is padded.
+ */
+public final class Base64Chunks {
+
+    static final int CHUNK_SIZE = 3 * 4096;
+
+    private Base64Chunks() {
+        //
+    }
+
+    /**
+     * @param max number of bytes read at most.
+     * @return number of bytes read and encoded.
+     */
+    public static long encode(final InputStream in, final OutputStream out, final long max) throws IOException {
+        final byte[] chunk = new byte[CHUNK_SIZE];
+        long total = 0;
+        while (total < max) {
+            final int n = readFully(in, chunk, (int) Math.min(CHUNK_SIZE, max - total));
+            if (n == 0) {
+                break;
+            }
+            out.write(Base64.encodeBase64(n == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, n)));
+            total += n;
+            if (n < CHUNK_SIZE) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return number of bytes read, less than length only at the end of the stream.
+     */
+    private static int readFully(final InputStream in, final byte[] buffer, final int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int n = in.read(buffer, read, length - read);
+            if (n == -1) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+}
@@ -0,0 +1,194 @@
+package hudson.plugins.mantis.soap;
+
+import hudson.plugins.mantis.MantisHandlingException;
+import hudson.plugins.mantis.model.MantisIssueHeader;
+import java.io.InputStream;
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Decodes the response of an issue header search with StAX.
+ * Each <code>item</code> of the returned array is handed to the handler as soon as it has been read,
+ * so memory does not grow with the number of issues.
+ * Only id, project, status, summary, last_updated, target_version and fixed_in_version are kept,
+ * the versions only come with items which are full issues.
+ */
+public final class IssueHeaderDecoder {
+
+    private static final String SOAP_ENV = "http://schemas.xmlsoap.org/soap/envelope/";
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private IssueHeaderDecoder() {
+        // hide default constructor
+    }
+
+    /**
+     * @return number of headers handed to the handler.
+     * @throws MantisHandlingException if the response is a SOAP fault, or if the handler throws it.
+     */
+    public static int decode(final InputStream in, final IssueHeaderHandler handler)
+            throws XMLStreamException, MantisHandlingException {
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+        try {
+            int count = 0;
+            // depth of the current element: 1 Envelope, 2 Body, 3 response, 4 return, 5 item
+            int depth = 0;
+            boolean inBody = false;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                depth++;
+                if (depth == 2) {
+                    inBody = SOAP_ENV.equals(reader.getNamespaceURI()) && "Body".equals(reader.getLocalName());
+                } else if (!inBody) {
+                    continue;
+                }
+                if (depth == 3 && SOAP_ENV.equals(reader.getNamespaceURI()) && "Fault".equals(reader.getLocalName())) {
+                    throw new MantisHandlingException(readFault(reader));
+                }
+                if (depth == 5) {
+                    if (reader.getAttributeValue(null, "href") != null) {
+                        throw new XMLStreamException("multi-ref encoded responses are not supported", reader.getLocation());
+                    }
+                    handler.header(readItem(reader));
+                    count++;
+                    // readItem consumed the end of the item
+                    depth--;
+                }
+            }
+            return count;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads one item, up to and including its end tag.
+     */
+    private static MantisIssueHeader readItem(final XMLStreamReader reader) throws XMLStreamException {
+        int id = 0;
+        int project = 0;
+        int status = 0;
+        String summary = null;
+        long lastUpdated = 0;
+        String targetVersion = null;
+        String fixedInVersion = null;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            final String name = reader.getLocalName();
+            if (isNil(reader)) {
+                skip(reader);
+            } else if ("id".equals(name)) {
+                id = parseInt(reader.getElementText());
+            } else if ("project".equals(name)) {
+                project = readRef(reader);
+            } else if ("status".equals(name)) {
+                status = readRef(reader);
+            } else if ("summary".equals(name)) {
+                summary = reader.getElementText();
+            } else if ("last_updated".equals(name)) {
+                lastUpdated = parseDate(reader.getElementText());
+            } else if ("target_version".equals(name)) {
+                targetVersion = reader.getElementText();
+            } else if ("fixed_in_version".equals(name)) {
+                fixedInVersion = reader.getElementText();
+            } else {
+                skip(reader);
+            }
+        }
+        return new MantisIssueHeader(id, project, status, summary, lastUpdated, targetVersion, fixedInVersion);
+    }
+
+    /**
+     * Reads an integer, given as is in headers and as an ObjectRef in full issues.
+     */
+    private static int readRef(final XMLStreamReader reader) throws XMLStreamException {
+        final StringBuilder text = new StringBuilder();
+        Integer ref = null;
+        while (true) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                if ("id".equals(reader.getLocalName())) {
+                    ref = parseInt(reader.getElementText());
+                } else {
+                    skip(reader);
+                }
+                if (ref == null) {
+                    ref = 0;
+                }
+            }
+        }
+        return ref != null ? ref : parseInt(text.toString());
+    }
+
+    private static String readFault(final XMLStreamReader reader) throws XMLStreamException {
+        String fault = "SOAP fault";
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("faultstring".equals(reader.getLocalName())) {
+                fault = reader.getElementText();
+            } else {
+                skip(reader);
+            }
+        }
+        return fault;
+    }
+
+    /**
+     * Skips the current element and its content.
+     */
+    private static void skip(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static boolean isNil(final XMLStreamReader reader) {
+        return "true".equals(reader.getAttributeValue("http://www.w3.org/2001/XMLSchema-instance", "nil"));
+    }
+
+    private static int parseInt(final String text) {
+        final String trimmed = text.trim();
+        return trimmed.length() == 0 ? 0 : Integer.parseInt(trimmed);
+    }
+
+    private static long parseDate(final String text) {
+        final String trimmed = text.trim();
+        if (trimmed.length() == 0) {
+            return 0;
+        }
+        try {
+            return DatatypeConverter.parseDateTime(trimmed).getTimeInMillis();
+        } catch (final IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        // the response comes from the network: no DTD, no external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        return factory;
+    }
+}
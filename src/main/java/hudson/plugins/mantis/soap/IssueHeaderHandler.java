@@ -0,0 +1,12 @@
+package hudson.plugins.mantis.soap;
+
+import hudson.plugins.mantis.MantisHandlingException;
+import hudson.plugins.mantis.model.MantisIssueHeader;
+
+/**
+ * Receives the issue headers of a search one by one, as they are decoded.
+ */
+public interface IssueHeaderHandler {
+
+    void header(MantisIssueHeader header) throws MantisHandlingException;
+}
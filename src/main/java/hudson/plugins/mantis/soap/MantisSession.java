@@ -3,10 +3,12 @@ package hudson.plugins.mantis.soap;
 import hudson.plugins.mantis.MantisHandlingException;
 import hudson.plugins.mantis.model.MantisCategory;
 import hudson.plugins.mantis.model.MantisIssue;
+import hudson.plugins.mantis.model.MantisIssueHeader;
 import hudson.plugins.mantis.model.MantisNote;
 import hudson.plugins.mantis.model.MantisProject;
 import hudson.plugins.mantis.model.MantisProjectVersion;
 import hudson.plugins.mantis.soap.mantis120.IssueData;
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.math.BigInteger;
 import java.util.List;
@@ -18,6 +20,12 @@ import java.util.List;
 public interface MantisSession {
 
     void addNote(final int id, final MantisNote note) throws MantisHandlingException;
+
+    /**
+     * Notifies Mantis of a check-in for the issue, the comment is added as a note.
+     * @param fixed whether Mantis should resolve the issue.
+     */
+    boolean checkin(int id, String comment, boolean fixed) throws MantisHandlingException;
     
     public void updateIssue(final int id, final IssueData data, PrintStream logger) throws MantisHandlingException;
 
@@ -32,8 +40,37 @@ public interface MantisSession {
     List<MantisCategory> getCategories(int projectId) throws MantisHandlingException;
     
     int addIssue(MantisIssue issue) throws MantisHandlingException;
+
+    int addAttachment(int id, String name, String fileType, byte[] content) throws MantisHandlingException;
+
+    /**
+     * Adds an attachment streamed from the content, without holding it in memory.
+     * @param length number of bytes of the content to send.
+     */
+    int addAttachment(int id, String name, String fileType, InputStream content, long length)
+            throws MantisHandlingException;
     
     /*java.math.BigInteger[]*/ hudson.plugins.mantis.soap.mantis120.IssueHeaderData[] tjd_getTargetVersionIssues(int projectID , String targetVersion, PrintStream logger) throws MantisHandlingException;
+
+    /**
+     * Same search as {@link #tjd_getTargetVersionIssues}, with the headers handed to the handler one by one.
+     * @return number of headers found.
+     */
+    int searchIssueHeaders(int projectId, String targetVersion, IssueHeaderHandler handler, PrintStream logger)
+            throws MantisHandlingException;
+
+    /**
+     * @return ids of the issues targeted at the version.
+     */
+    List<Integer> searchIssueIds(int projectId, String targetVersion) throws MantisHandlingException;
+
+    /**
+     * @return one page of the issue headers of the project, most recently updated first.
+     */
+    List<MantisIssueHeader> getProjectIssueHeaders(int projectId, int page, int perPage)
+            throws MantisHandlingException;
+
+    MantisIssueHeader getIssueHeader(int id) throws MantisHandlingException;
     
     MantisProjectVersion addProjectVersion(MantisProjectVersion version) throws MantisHandlingException;
     
@@ -19,7 +19,7 @@ public final class MantisSessionFactory {
             throws MantisHandlingException {
         //tjd 
         //if (MantisVersion.V120.equals(site.getVersion())) {
-            return new MantisSessionImpl(site);
+            return ThrottledSession.wrap(new MantisSessionImpl(site), SiteThrottle.of(site));
         //}
         //return new hudson.plugins.mantis.soap.mantis110.MantisSessionImpl(site);
     }
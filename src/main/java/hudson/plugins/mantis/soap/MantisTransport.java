@@ -0,0 +1,47 @@
+package hudson.plugins.mantis.soap;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import jenkins.model.Jenkins;
+import org.apache.axis.Handler;
+
+/**
+ * Sends the SOAP messages of a {@link hudson.plugins.mantis.MantisSite} over the wire.
+ * The generated stubs are not aware of the transport: it is plugged in as the pivot
+ * handler of the Axis client configuration, see {@link AbstractMantisSession#getEngine()}.
+ * Implementations are registered with {@link hudson.Extension} and selected per site by id.
+ */
+public abstract class MantisTransport implements ExtensionPoint {
+
+    /**
+     * @return the id stored in the site configuration.
+     */
+    public abstract String getId();
+
+    public abstract String getDisplayName();
+
+    /**
+     * @return a new Axis pivot handler sending the request message of the context
+     *         and setting its response message. The handler is shared by every site
+     *         using this transport, the site is known from {@link TransportStatistics#SITE_PROPERTY}.
+     */
+    public abstract Handler createPivot();
+
+    public static ExtensionList<MantisTransport> all() {
+        return Jenkins.getInstance().getExtensionList(MantisTransport.class);
+    }
+
+    /**
+     * @return the transport with the given id, or the Axis one if there is none.
+     */
+    public static MantisTransport get(final String id) {
+        if (id != null && Jenkins.getInstance() != null) {
+            for (final MantisTransport transport : all()) {
+                if (transport.getId().equals(id)) {
+                    return transport;
+                }
+            }
+        }
+        return AxisTransport.INSTANCE;
+    }
+}
@@ -0,0 +1,337 @@
+package hudson.plugins.mantis.soap;
+
+import hudson.Extension;
+import hudson.plugins.mantis.MantisHandlingException;
+import hudson.plugins.mantis.Messages;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import org.apache.axis.Handler;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Transport keeping connections and TLS sessions alive between calls.
+ * Connections are pooled per host by the JDK keep-alive cache, which requires every
+ * response to be read to the end; TLS sessions are resumed through one shared
+ * {@link SSLContext}.
+ * Compressed requests are negotiated per host: they are sent until the host rejects one,
+ * see {@link TransportSender}.
+ * Bodies too large to be held in memory are written as they are sent, with chunked transfer encoding.
+ * Bytes before and after compression are counted in the {@link TransportStatistics} of the site.
+ * Server certificates are checked against the JVM trust store, except for the requests of the sites
+ * using the Axis sender, which accepts any certificate.
+ */
+@Extension
+public final class PooledHttpTransport extends MantisTransport {
+
+    public static final String ID = "pooled";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private volatile SSLSocketFactory socketFactory;
+
+    private volatile SSLSocketFactory trustingSocketFactory;
+
+    /**
+     * hosts known not to accept gzip request bodies.
+     */
+    private final ConcurrentMap<String, Boolean> plainRequestHosts = new ConcurrentHashMap<String, Boolean>();
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.PooledHttpTransport_DisplayName();
+    }
+
+    @Override
+    public Handler createPivot() {
+        return new TransportSender(this);
+    }
+
+    boolean acceptsGzipRequests(final String host) {
+        return !plainRequestHosts.containsKey(host);
+    }
+
+    void rejectGzipRequests(final String host) {
+        if (plainRequestHosts.putIfAbsent(host, Boolean.TRUE) == null) {
+            LOGGER.log(Level.INFO, "{0} does not accept compressed requests, sending them uncompressed", host);
+        }
+    }
+
+    /**
+     * Sends the request from the calling thread and waits for the response.
+     */
+    public TransportResponse send(final TransportRequest request) throws IOException {
+        return execute(request);
+    }
+
+    /**
+     * Sends the request and hands the decoded response body to the reader as it arrives,
+     * instead of buffering it.
+     * @param statistics counters updated once the body has been read.
+     */
+    public <T> T stream(final TransportRequest request, final TransportStatistics statistics,
+            final ResponseReader<T> reader) throws IOException, MantisHandlingException {
+        final long[] sent = new long[1];
+        final HttpURLConnection conn = open(request, sent);
+        final int status = conn.getResponseCode();
+        final InputStream raw = status >= HttpURLConnection.HTTP_BAD_REQUEST ? conn.getErrorStream() : conn.getInputStream();
+        if (raw == null) {
+            throw new IOException("HTTP " + status + " without body from " + request.getUrl());
+        }
+        final CountingInputStream wire = new CountingInputStream(raw);
+        try {
+            final CountingInputStream decoded = new CountingInputStream(
+                    "gzip".equalsIgnoreCase(conn.getContentEncoding()) ? new GZIPInputStream(wire) : wire);
+            final T result = reader.read(status, conn.getContentType(), decoded);
+            // read to the end, otherwise the connection is not given back to the keep-alive cache
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while (decoded.read(buffer) != -1) {
+                // drain
+            }
+            statistics.record(sent[0], sent[0], wire.getCount(), decoded.getCount());
+            return result;
+        } finally {
+            wire.close();
+        }
+    }
+
+    TransportResponse execute(final TransportRequest request) throws IOException {
+        final HttpURLConnection conn = open(request, new long[1]);
+        final int status = conn.getResponseCode();
+        InputStream in = status >= HttpURLConnection.HTTP_BAD_REQUEST ? conn.getErrorStream() : conn.getInputStream();
+        if (in == null) {
+            return new TransportResponse(status, conn.getContentType(), conn.getContentEncoding(), new byte[0]);
+        }
+        // read to the end, otherwise the connection is not given back to the keep-alive cache
+        try {
+            final int length = conn.getContentLength();
+            final ByteArrayOutputStream body = new ByteArrayOutputStream(length > 0 ? length : BUFFER_SIZE);
+            IOUtils.copy(in, body);
+            return new TransportResponse(status, conn.getContentType(), conn.getContentEncoding(),
+                    body.toByteArray());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Opens a connection and sends the request body.
+     * @param sent set to the number of bytes of the body.
+     */
+    private HttpURLConnection open(final TransportRequest request, final long[] sent) throws IOException {
+        final HttpURLConnection conn = (HttpURLConnection) request.getUrl().openConnection();
+        if (conn instanceof HttpsURLConnection) {
+            final HttpsURLConnection https = (HttpsURLConnection) conn;
+            final SSLSocketFactory factory = request.isAnyCertificateAccepted()
+                    ? getTrustingSocketFactory() : getSocketFactory();
+            if (factory != null) {
+                https.setSSLSocketFactory(factory);
+            }
+            if (request.isAnyCertificateAccepted()) {
+                https.setHostnameVerifier(AnyCertificate.INSTANCE);
+            }
+        }
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setUseCaches(false);
+        conn.setConnectTimeout(request.getTimeout());
+        conn.setReadTimeout(request.getTimeout());
+        if (request.getWriter() != null) {
+            conn.setChunkedStreamingMode(BUFFER_SIZE);
+        } else {
+            conn.setFixedLengthStreamingMode(request.getLength());
+        }
+        for (final Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            conn.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        final OutputStream out = conn.getOutputStream();
+        try {
+            if (request.getWriter() != null) {
+                final CountingOutputStream counting = new CountingOutputStream(out);
+                request.getWriter().writeTo(counting);
+                sent[0] = counting.getCount();
+            } else {
+                out.write(request.getBody(), 0, request.getLength());
+                sent[0] = request.getLength();
+            }
+        } finally {
+            out.close();
+        }
+        return conn;
+    }
+
+    /**
+     * @return the registered instance, or a private one when Jenkins is not running.
+     */
+    public static PooledHttpTransport get() {
+        final MantisTransport transport = MantisTransport.get(ID);
+        if (transport instanceof PooledHttpTransport) {
+            return (PooledHttpTransport) transport;
+        }
+        return Fallback.INSTANCE;
+    }
+
+    /**
+     * Consumes a response body.
+     */
+    public interface ResponseReader<T> {
+        T read(int status, String contentType, InputStream body) throws IOException, MantisHandlingException;
+    }
+
+    private static final class Fallback {
+        static final PooledHttpTransport INSTANCE = new PooledHttpTransport();
+    }
+
+    /**
+     * Counts the bytes read through it.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the connection stream is closed by the transport
+            flush();
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    private SSLSocketFactory getSocketFactory() {
+        SSLSocketFactory factory = socketFactory;
+        if (factory == null) {
+            try {
+                final SSLContext context = SSLContext.getInstance("TLS");
+                context.init(null, null, null);
+                factory = context.getSocketFactory();
+                socketFactory = factory;
+            } catch (final GeneralSecurityException e) {
+                LOGGER.log(Level.WARNING, "Failed to create the TLS context, using the default one", e);
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Only used for the requests of the sites whose calls go through the Axis sender, which accepts
+     * any certificate already.
+     */
+    private SSLSocketFactory getTrustingSocketFactory() throws IOException {
+        SSLSocketFactory factory = trustingSocketFactory;
+        if (factory == null) {
+            try {
+                final SSLContext context = SSLContext.getInstance("TLS");
+                context.init(null, new TrustManager[] {AnyCertificate.INSTANCE}, null);
+                factory = context.getSocketFactory();
+                trustingSocketFactory = factory;
+            } catch (final GeneralSecurityException e) {
+                throw new IOException("Failed to create the TLS context", e);
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Trusts any server, like the socket factory set up for the Axis sender.
+     */
+    private static final class AnyCertificate implements X509TrustManager, HostnameVerifier {
+
+        static final AnyCertificate INSTANCE = new AnyCertificate();
+
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType) {
+            // trusted
+        }
+
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType) {
+            // trusted
+        }
+
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+
+        public boolean verify(final String hostname, final SSLSession session) {
+            return true;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(PooledHttpTransport.class.getName());
+}
@@ -0,0 +1,265 @@
+package hudson.plugins.mantis.soap;
+
+import hudson.plugins.mantis.MantisHandlingException;
+import hudson.plugins.mantis.MantisSite;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the calls made to one site, whatever the code path: at most {@link #RATE} calls per second
+ * with bursts of {@link #BURST}, and at most {@link #CONCURRENCY} calls at a time.
+ * Waiting calls are queued per job, and jobs are served in turn, so that a large release
+ * only delays a small job by one call at a time. A thread already holding a permit of the
+ * site is let through, so that nested calls cannot deadlock.
+ * The job of the current thread is set with {@link #setJob(String)}.
+ */
+public final class SiteThrottle {
+
+    static final double RATE = Double.parseDouble(
+            System.getProperty(SiteThrottle.class.getName() + ".rate", "10"));
+
+    static final int BURST = Integer.getInteger(SiteThrottle.class.getName() + ".burst", 20);
+
+    static final int CONCURRENCY = Integer.getInteger(SiteThrottle.class.getName() + ".concurrency", 4);
+
+    private static final String NO_JOB = "";
+
+    private static final ConcurrentMap<String, SiteThrottle> SITES = new ConcurrentHashMap<String, SiteThrottle>();
+
+    private static final ThreadLocal<String> JOB = new ThreadLocal<String>();
+
+    private final ThreadLocal<int[]> held = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    private final double rate;
+
+    private final int burst;
+
+    private final int concurrency;
+
+    /**
+     * waiters by job, the job to serve next first.
+     */
+    private final LinkedHashMap<String, Deque<Waiter>> queues = new LinkedHashMap<String, Deque<Waiter>>();
+
+    private double tokens;
+
+    private long refilled = System.nanoTime();
+
+    private int active;
+
+    private int queued;
+
+    private int maxQueued;
+
+    private long calls;
+
+    private long waits;
+
+    private long waitMillis;
+
+    private long maxWaitMillis;
+
+    SiteThrottle(final double rate, final int burst, final int concurrency) {
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.concurrency = Math.max(1, concurrency);
+        this.tokens = this.burst;
+    }
+
+    public static SiteThrottle of(final MantisSite site) {
+        final String key = site != null ? site.getName() : "";
+        SiteThrottle throttle = SITES.get(key);
+        if (throttle == null) {
+            final SiteThrottle created = new SiteThrottle(RATE, BURST, CONCURRENCY);
+            throttle = SITES.putIfAbsent(key, created);
+            if (throttle == null) {
+                throttle = created;
+            }
+        }
+        return throttle;
+    }
+
+    /**
+     * Sets the job the calls of the current thread are queued for.
+     * @return the previous job, to be restored once done.
+     */
+    public static String setJob(final String job) {
+        final String previous = JOB.get();
+        if (job == null) {
+            JOB.remove();
+        } else {
+            JOB.set(job);
+        }
+        return previous;
+    }
+
+    public static String getJob() {
+        return JOB.get();
+    }
+
+    /**
+     * Waits for a permit to call the site. Every successful call must be followed by {@link #release()}.
+     */
+    void acquire() throws MantisHandlingException {
+        final int[] depth = held.get();
+        if (depth[0] > 0) {
+            depth[0]++;
+            return;
+        }
+        final String job = JOB.get() != null ? JOB.get() : NO_JOB;
+        final Waiter waiter = new Waiter();
+        synchronized (this) {
+            Deque<Waiter> queue = queues.get(job);
+            if (queue == null) {
+                queue = new ArrayDeque<Waiter>();
+                queues.put(job, queue);
+            }
+            queue.add(waiter);
+            queued++;
+            maxQueued = Math.max(maxQueued, queued);
+            try {
+                while (!waiter.granted) {
+                    final long next = dispatch();
+                    if (waiter.granted) {
+                        break;
+                    }
+                    wait(next > 0 ? next : 0);
+                }
+            } catch (final InterruptedException e) {
+                if (!waiter.granted) {
+                    cancel(job, waiter);
+                    Thread.currentThread().interrupt();
+                    throw new MantisHandlingException(e);
+                }
+                // the permit is ours anyway, keep the interrupt for later
+                Thread.currentThread().interrupt();
+            }
+            final long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waiter.since);
+            calls++;
+            if (waited > 0) {
+                waits++;
+                waitMillis += waited;
+                maxWaitMillis = Math.max(maxWaitMillis, waited);
+            }
+        }
+        depth[0] = 1;
+    }
+
+    void release() {
+        final int[] depth = held.get();
+        if (--depth[0] > 0) {
+            return;
+        }
+        synchronized (this) {
+            active--;
+            dispatch();
+        }
+    }
+
+    /**
+     * Grants permits to the waiters at the head of the job queues, in turn.
+     * @return milliseconds until the next token, or 0 if none is missing.
+     */
+    private long dispatch() {
+        refill();
+        while (active < concurrency && tokens >= 1 && !queues.isEmpty()) {
+            final Iterator<Map.Entry<String, Deque<Waiter>>> it = queues.entrySet().iterator();
+            final Map.Entry<String, Deque<Waiter>> next = it.next();
+            it.remove();
+            final Waiter waiter = next.getValue().poll();
+            if (!next.getValue().isEmpty()) {
+                // back to the end of the round
+                queues.put(next.getKey(), next.getValue());
+            }
+            waiter.granted = true;
+            queued--;
+            active++;
+            tokens--;
+            notifyAll();
+        }
+        if (tokens < 1 && !queues.isEmpty()) {
+            return Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / rate));
+        }
+        return 0;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilled) * rate / TimeUnit.SECONDS.toNanos(1));
+        refilled = now;
+    }
+
+    private void cancel(final String job, final Waiter waiter) {
+        final Deque<Waiter> queue = queues.get(job);
+        if (queue != null && queue.remove(waiter)) {
+            queued--;
+            if (queue.isEmpty()) {
+                queues.remove(job);
+            }
+        }
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    /**
+     * @return calls currently waiting for a permit.
+     */
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    public synchronized int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public synchronized int getQueuedJobs() {
+        return queues.size();
+    }
+
+    public synchronized long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return calls which had to wait for a permit.
+     */
+    public synchronized long getWaits() {
+        return waits;
+    }
+
+    public synchronized long getWaitMillis() {
+        return waitMillis;
+    }
+
+    public synchronized long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    private static final class Waiter {
+
+        private final long since = System.nanoTime();
+
+        private boolean granted;
+    }
+}
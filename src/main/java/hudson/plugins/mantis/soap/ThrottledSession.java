@@ -0,0 +1,40 @@
+package hudson.plugins.mantis.soap;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Makes every call of a {@link MantisSession} wait for a permit of its {@link SiteThrottle}.
+ */
+final class ThrottledSession implements InvocationHandler {
+
+    private final MantisSession session;
+
+    private final SiteThrottle throttle;
+
+    private ThrottledSession(final MantisSession session, final SiteThrottle throttle) {
+        this.session = session;
+        this.throttle = throttle;
+    }
+
+    static MantisSession wrap(final MantisSession session, final SiteThrottle throttle) {
+        return (MantisSession) Proxy.newProxyInstance(MantisSession.class.getClassLoader(),
+                new Class<?>[] {MantisSession.class}, new ThrottledSession(session, throttle));
+    }
+
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(session, args);
+        }
+        throttle.acquire();
+        try {
+            return method.invoke(session, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            throttle.release();
+        }
+    }
+}
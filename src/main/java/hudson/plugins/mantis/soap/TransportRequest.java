@@ -0,0 +1,122 @@
+package hudson.plugins.mantis.soap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * HTTP POST request sent by a {@link PooledHttpTransport}.
+ */
+public final class TransportRequest {
+
+    private final URL url;
+
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+    private final byte[] body;
+
+    private final int length;
+
+    private final BodyWriter writer;
+
+    private int timeout;
+
+    private boolean anyCertificate;
+
+    /**
+     * @param body the first {@code length} bytes are sent.
+     */
+    public TransportRequest(final URL url, final byte[] body, final int length) {
+        this.url = url;
+        this.body = body;
+        this.length = length;
+        this.writer = null;
+    }
+
+    /**
+     * Request whose body is written as it is sent, with chunked transfer encoding.
+     */
+    public TransportRequest(final URL url, final BodyWriter writer) {
+        this.url = url;
+        this.body = null;
+        this.length = -1;
+        this.writer = writer;
+    }
+
+    public TransportRequest header(final String name, final String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Adds an HTTP Basic Authentication header.
+     */
+    public TransportRequest basicAuth(final String userName, final String password) {
+        final String credentials = userName + ":" + (password != null ? password : "");
+        try {
+            return header("Authorization",
+                    "Basic " + new String(Base64.encodeBase64(credentials.getBytes("UTF-8")), "US-ASCII"));
+        } catch (final UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @param timeout connect and read timeout in milliseconds, 0 for none.
+     */
+    public TransportRequest timeout(final int timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Accepts any server certificate, as the Axis sender does.
+     */
+    public TransportRequest acceptAnyCertificate(final boolean accept) {
+        this.anyCertificate = accept;
+        return this;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return length of the body, -1 if it is written by a {@link BodyWriter}.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public BodyWriter getWriter() {
+        return writer;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public boolean isAnyCertificateAccepted() {
+        return anyCertificate;
+    }
+
+    /**
+     * Writes a request body too large to be held in memory.
+     */
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,45 @@
+package hudson.plugins.mantis.soap;
+
+/**
+ * HTTP response received by a {@link PooledHttpTransport}.
+ */
+public final class TransportResponse {
+
+    private final int status;
+
+    private final String contentType;
+
+    private final String contentEncoding;
+
+    private final byte[] body;
+
+    public TransportResponse(final int status, final String contentType, final String contentEncoding,
+            final byte[] body) {
+        this.status = status;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.body = body;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the content encoding of the body, null if not encoded.
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * @return the body as received, still encoded.
+     */
+    public byte[] getBody() {
+        return body;
+    }
+}
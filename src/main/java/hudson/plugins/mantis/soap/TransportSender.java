@@ -0,0 +1,150 @@
+package hudson.plugins.mantis.soap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.soap.SOAPException;
+import org.apache.axis.AxisFault;
+import org.apache.axis.Message;
+import org.apache.axis.MessageContext;
+import org.apache.axis.handlers.BasicHandler;
+import org.apache.axis.soap.SOAPConstants;
+import org.apache.axis.transport.http.HTTPConstants;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Axis pivot handler sending the request message through a {@link PooledHttpTransport}.
+ * Honours the gzip properties of the stub, see {@link AbstractMantisSession#configureStub}:
+ * responses are requested compressed, and requests are sent compressed until the host
+ * cannot read one, in which case it is sent again uncompressed and the host is remembered
+ * as not accepting them, see {@link #retryUncompressed}.
+ */
+final class TransportSender extends BasicHandler {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String GZIP = "gzip";
+
+    private final transient PooledHttpTransport transport;
+
+    TransportSender(final PooledHttpTransport transport) {
+        this.transport = transport;
+    }
+
+    public void invoke(final MessageContext ctx) throws AxisFault {
+        try {
+            final Message req = ctx.getRequestMessage();
+            final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            req.writeTo(serialized);
+            final byte[] raw = serialized.toByteArray();
+
+            final URL url = new URL(ctx.getStrProp(MessageContext.TRANS_URL));
+            final String host = url.getAuthority();
+            final boolean acceptGzip = ctx.isPropertyTrue(HTTPConstants.MC_ACCEPT_GZIP);
+            boolean gzipRequest = ctx.isPropertyTrue(HTTPConstants.MC_GZIP_REQUEST)
+                    && transport.acceptsGzipRequests(host);
+
+            byte[] sent = gzipRequest ? gzip(raw) : raw;
+            TransportResponse response = transport.send(createRequest(ctx, url, sent, acceptGzip, gzipRequest));
+            if (gzipRequest && retryUncompressed(response.getStatus())) {
+                // the host may not decode compressed bodies: try once more without
+                final int status = response.getStatus();
+                gzipRequest = false;
+                sent = raw;
+                response = transport.send(createRequest(ctx, url, sent, acceptGzip, false));
+                if (rejectsGzip(status, response.getStatus())) {
+                    transport.rejectGzipRequests(host);
+                }
+            }
+            final byte[] body = decode(response);
+
+            final TransportStatistics statistics =
+                    TransportStatistics.of(ctx.getStrProp(TransportStatistics.SITE_PROPERTY));
+            statistics.record(raw.length, sent.length, response.getBody().length, body.length);
+
+            // a SOAP fault comes with a 500
+            if (response.getStatus() >= HttpURLConnection.HTTP_MULT_CHOICE
+                    && response.getStatus() != HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                throw new AxisFault("HTTP", "(" + response.getStatus() + ")", null, null);
+            }
+            final Message res = new Message(new ByteArrayInputStream(body), false,
+                    response.getContentType(), null);
+            res.setMessageType(Message.RESPONSE);
+            ctx.setResponseMessage(res);
+        } catch (final IOException e) {
+            throw AxisFault.makeFault(e);
+        } catch (final SOAPException e) {
+            throw AxisFault.makeFault(e);
+        }
+    }
+
+    /**
+     * A compressed request is sent again uncompressed only when the host says it could not read the body.
+     * After any other error, a 5xx from a proxy or a PHP error page included, the request may have been
+     * processed: sending it again could apply a mutation twice.
+     */
+    static boolean retryUncompressed(final int status) {
+        return status == HttpURLConnection.HTTP_BAD_REQUEST || status == HttpURLConnection.HTTP_LENGTH_REQUIRED
+                || status == HttpURLConnection.HTTP_UNSUPPORTED_TYPE;
+    }
+
+    /**
+     * Only a client error cured by sending the body uncompressed tells that the host rejects compressed
+     * requests, a 5xx may just be transient.
+     */
+    static boolean rejectsGzip(final int compressedStatus, final int plainStatus) {
+        return compressedStatus < HttpURLConnection.HTTP_INTERNAL_ERROR
+                && plainStatus < HttpURLConnection.HTTP_BAD_REQUEST;
+    }
+
+    private byte[] decode(final TransportResponse response) throws IOException {
+        return GZIP.equalsIgnoreCase(response.getContentEncoding())
+                ? gunzip(response.getBody()) : response.getBody();
+    }
+
+    private TransportRequest createRequest(final MessageContext ctx, final URL url, final byte[] body,
+            final boolean acceptGzip, final boolean gzipRequest) throws IOException {
+        final SOAPConstants soap = ctx.getSOAPConstants();
+        final TransportRequest request = new TransportRequest(url, body, body.length)
+                .header("Content-Type", ctx.getRequestMessage().getContentType(soap))
+                .header("SOAPAction", "\"" + (ctx.useSOAPAction() ? ctx.getSOAPActionURI() : "") + "\"")
+                .timeout(ctx.getTimeout());
+        if (acceptGzip) {
+            request.header("Accept-Encoding", GZIP);
+        }
+        if (gzipRequest) {
+            request.header("Content-Encoding", GZIP);
+        }
+        if (ctx.getUsername() != null) {
+            request.basicAuth(ctx.getUsername(), ctx.getPassword());
+        }
+        return request;
+    }
+
+    static byte[] gzip(final byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        final GZIPOutputStream gz = new GZIPOutputStream(out);
+        try {
+            gz.write(data);
+        } finally {
+            gz.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(final byte[] data) throws IOException {
+        final InputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+            IOUtils.copy(in, out);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package hudson.plugins.mantis.soap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes sent to and received from one site, before and after compression.
+ */
+public final class TransportStatistics {
+
+    /**
+     * stub property holding the name of the site, read by the shared pivot handlers.
+     */
+    public static final String SITE_PROPERTY = "mantis.site";
+
+    private static final ConcurrentMap<String, TransportStatistics> SITES =
+            new ConcurrentHashMap<String, TransportStatistics>();
+
+    private final AtomicLong calls = new AtomicLong();
+
+    private final AtomicLong requestBytes = new AtomicLong();
+
+    private final AtomicLong requestWireBytes = new AtomicLong();
+
+    private final AtomicLong responseBytes = new AtomicLong();
+
+    private final AtomicLong responseWireBytes = new AtomicLong();
+
+    TransportStatistics() {
+        //
+    }
+
+    /**
+     * @return the statistics of the site, created on first use.
+     */
+    public static TransportStatistics of(final String siteName) {
+        final String key = siteName != null ? siteName : "";
+        TransportStatistics stats = SITES.get(key);
+        if (stats == null) {
+            final TransportStatistics created = new TransportStatistics();
+            stats = SITES.putIfAbsent(key, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @param request size of the serialized request.
+     * @param requestWire size of the request body as sent.
+     * @param responseWire size of the response body as received.
+     * @param response size of the decoded response.
+     */
+    void record(final long request, final long requestWire, final long responseWire, final long response) {
+        calls.incrementAndGet();
+        requestBytes.addAndGet(request);
+        requestWireBytes.addAndGet(requestWire);
+        responseWireBytes.addAndGet(responseWire);
+        responseBytes.addAndGet(response);
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    public long getRequestWireBytes() {
+        return requestWireBytes.get();
+    }
+
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    public long getResponseWireBytes() {
+        return responseWireBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d call(s), sent %d/%d bytes, received %d/%d bytes (wire/decoded)",
+                getCalls(), getRequestWireBytes(), getRequestBytes(), getResponseWireBytes(), getResponseBytes());
+    }
+}
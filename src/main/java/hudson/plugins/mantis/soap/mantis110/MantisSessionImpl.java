@@ -19,7 +19,6 @@ import java.util.List;
 import java.util.logging.Logger;
 import javax.xml.rpc.ServiceException;
 import org.apache.axis.AxisProperties;
-import org.apache.axis.EngineConfiguration;
 import org.apache.axis.client.AxisClient;
 import org.apache.axis.client.Stub;
 
@@ -31,27 +30,35 @@ public final class MantisSessionImpl extends AbstractMantisSession {
     public MantisSessionImpl(final MantisSite site) throws MantisHandlingException {
         LOGGER.info("Mantis version is 1.1.X");
         this.site = site;
+        final MantisConnectPortType shared = getSharedStub(MantisConnectPortType.class);
+        portType = shared != null ? shared : createPortType();
+    }
+
+    private MantisConnectPortType createPortType() throws MantisHandlingException {
         try {
             final URL endpoint = new URL(site.getUrl(), END_POINT);
             final MantisConnectLocator locator = new MantisConnectLocator();
 
             // Set Handler
-            final EngineConfiguration config = createClientConfig();
-            locator.setEngineConfiguration(config);
-            locator.setEngine(new AxisClient(config));
+            final AxisClient engine = getEngine();
+            locator.setEngineConfiguration(engine.getConfig());
+            locator.setEngine(engine);
 
-            portType = locator.getMantisConnectPort(endpoint);
+            final MantisConnectPortType created = locator.getMantisConnectPort(endpoint);
+            configureStub((Stub) created);
 
             // Basic Authentication if they are specified
             if (site.getBasicUserName() != null && site.getPlainBasicPassword() != null) {
-                ((Stub) portType).setUsername(site.getBasicUserName());
-                ((Stub) portType).setPassword(site.getPlainBasicPassword());
+                ((Stub) created).setUsername(site.getBasicUserName());
+                ((Stub) created).setPassword(site.getPlainBasicPassword());
             }
             // Support https
             // Allowing unsigned server certs
             AxisProperties.setProperty("axis.socketSecureFactory",
                     "org.apache.axis.components.net.SunFakeTrustSocketFactory");
 
+            shareStub((Stub) created);
+            return created;
         } catch (final ServiceException e) {
             throw new MantisHandlingException(e);
         } catch (final MalformedURLException e) {
@@ -84,6 +91,16 @@ public final class MantisSessionImpl extends AbstractMantisSession {
         }
     }
 
+    public boolean checkin(final int id, final String comment, final boolean fixed)
+            throws MantisHandlingException {
+        try {
+            return portType.mc_issue_checkin(site.getUserName(), site.getPlainPassword(), BigInteger.valueOf(id),
+                    comment, fixed);
+        } catch (final RemoteException e) {
+            throw new MantisHandlingException(e);
+        }
+    }
+
     public String getVersion() throws MantisHandlingException {
         String version;
         try {
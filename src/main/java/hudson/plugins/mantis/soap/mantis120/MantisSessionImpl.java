@@ -1,17 +1,28 @@
 package hudson.plugins.mantis.soap.mantis120;
 
+import hudson.Util;
 import hudson.plugins.mantis.MantisHandlingException;
 import hudson.plugins.mantis.MantisSite;
 import hudson.plugins.mantis.Messages;
 import hudson.plugins.mantis.Utility;
 import hudson.plugins.mantis.model.MantisCategory;
 import hudson.plugins.mantis.model.MantisIssue;
+import hudson.plugins.mantis.model.MantisIssueHeader;
 import hudson.plugins.mantis.model.MantisNote;
 import hudson.plugins.mantis.model.MantisProject;
 import hudson.plugins.mantis.model.MantisProjectVersion;
 import hudson.plugins.mantis.soap.AbstractMantisSession;
+import hudson.plugins.mantis.soap.Base64Chunks;
+import hudson.plugins.mantis.soap.IssueHeaderDecoder;
+import hudson.plugins.mantis.soap.IssueHeaderHandler;
+import hudson.plugins.mantis.soap.PooledHttpTransport;
+import hudson.plugins.mantis.soap.TransportRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.math.BigInteger;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.rmi.RemoteException;
@@ -19,10 +30,14 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.xml.rpc.ServiceException;
+import javax.xml.stream.XMLStreamException;
+import org.apache.commons.io.IOUtils;
 import org.apache.axis.AxisProperties;
-import org.apache.axis.EngineConfiguration;
 import org.apache.axis.client.AxisClient;
 import org.apache.axis.client.Stub;
 
@@ -33,27 +48,35 @@ public final class MantisSessionImpl extends AbstractMantisSession {
     public MantisSessionImpl(final MantisSite site) throws MantisHandlingException {
         LOGGER.info("Mantis version is 1.2.X");
         this.site = site;
+        final MantisConnectPortType shared = getSharedStub(MantisConnectPortType.class);
+        portType = shared != null ? shared : createPortType();
+    }
+
+    private MantisConnectPortType createPortType() throws MantisHandlingException {
         try {
             final URL endpoint = new URL(site.getUrl(), END_POINT);
             final MantisConnectLocator locator = new MantisConnectLocator();
 
             // Set Handler
-            final EngineConfiguration config = createClientConfig();
-            locator.setEngineConfiguration(config);
-            locator.setEngine(new AxisClient(config));
+            final AxisClient engine = getEngine();
+            locator.setEngineConfiguration(engine.getConfig());
+            locator.setEngine(engine);
 
-            portType = locator.getMantisConnectPort(endpoint);
+            final MantisConnectPortType created = locator.getMantisConnectPort(endpoint);
+            configureStub((Stub) created);
 
             // Basic Authentication if they are specified
             if (site.getBasicUserName() != null && site.getPlainBasicPassword() != null) {
-                ((Stub) portType).setUsername(site.getBasicUserName());
-                ((Stub) portType).setPassword(site.getPlainBasicPassword());
+                ((Stub) created).setUsername(site.getBasicUserName());
+                ((Stub) created).setPassword(site.getPlainBasicPassword());
             }
             // Support https
             // Allowing unsigned server certs
             AxisProperties.setProperty("axis.socketSecureFactory",
                     "org.apache.axis.components.net.SunFakeTrustSocketFactory");
 
+            shareStub((Stub) created);
+            return created;
         } catch (final ServiceException e) {
             throw new MantisHandlingException(e);
         } catch (final MalformedURLException e) {
@@ -70,7 +93,8 @@ public final class MantisSessionImpl extends AbstractMantisSession {
             throw new MantisHandlingException(e);
         }
 
-        return new MantisIssue(id, data.getSummary());
+        return new MantisIssue(id, data.getSummary(), Util.fixNull(data.getTarget_version()),
+                Util.fixNull(data.getFixed_in_version()));
     }
     
     public IssueData getIssueData(final int id) throws MantisHandlingException {
@@ -98,6 +122,17 @@ public final class MantisSessionImpl extends AbstractMantisSession {
             throw new MantisHandlingException(e);
         }
     }
+
+    @Override
+    public boolean checkin(final int id, final String comment, final boolean fixed)
+            throws MantisHandlingException {
+        try {
+            return portType.mc_issue_checkin(site.getUserName(), site.getPlainPassword(), BigInteger.valueOf(id),
+                    comment, fixed);
+        } catch (final RemoteException e) {
+            throw new MantisHandlingException(e);
+        }
+    }
     
     //pour cette fonction on recoit directement les données formattées car on ne peut pas savoir ce qui va etre mis à jour...
     public void updateIssue(final int id, final IssueData data, PrintStream logger)
@@ -196,6 +231,90 @@ public final class MantisSessionImpl extends AbstractMantisSession {
         return addedIssueNo.intValue();
     }
     
+    @Override
+    public int addAttachment(int id, String name, String fileType, byte[] content)
+            throws MantisHandlingException {
+        if (content == null) {
+            throw new MantisHandlingException("content should not be null.");
+        }
+        BigInteger attachmentId;
+        try {
+            attachmentId = portType.mc_issue_attachment_add(site.getUserName(), site.getPlainPassword(),
+                    BigInteger.valueOf(id), name, fileType, content);
+        } catch (final RemoteException e) {
+            throw new MantisHandlingException(e);
+        }
+        return attachmentId.intValue();
+    }
+
+    /**
+     * Sends the content as base64 chunks written straight to the connection, the stubs
+     * would need it whole in memory, encoded. This is done for every transport: for the sites using
+     * the Axis sender, any certificate is accepted, as it does.
+     */
+    @Override
+    public int addAttachment(final int id, final String name, final String fileType, final InputStream content,
+            final long length) throws MantisHandlingException {
+        final StringBuilder head = new StringBuilder(1024);
+        head.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"")
+                .append(" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\"")
+                .append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"")
+                .append(" xmlns:tns=\"").append(NAMESPACE).append("\">")
+                .append("<soapenv:Body>")
+                .append("<tns:mc_issue_attachment_add")
+                .append(" soapenv:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\">")
+                .append("<username xsi:type=\"xsd:string\">").append(Util.xmlEscape(Util.fixNull(site.getUserName())))
+                .append("</username>")
+                .append("<password xsi:type=\"xsd:string\">").append(Util.xmlEscape(Util.fixNull(site.getPlainPassword())))
+                .append("</password>")
+                .append("<issue_id xsi:type=\"xsd:integer\">").append(id).append("</issue_id>")
+                .append("<name xsi:type=\"xsd:string\">").append(Util.xmlEscape(Util.fixNull(name))).append("</name>")
+                .append("<file_type xsi:type=\"xsd:string\">").append(Util.xmlEscape(Util.fixNull(fileType)))
+                .append("</file_type>")
+                .append("<content xsi:type=\"xsd:base64Binary\">");
+        final String tail = "</content></tns:mc_issue_attachment_add></soapenv:Body></soapenv:Envelope>";
+
+        try {
+            final TransportRequest request = new TransportRequest(new URL(site.getUrl(), END_POINT),
+                    new TransportRequest.BodyWriter() {
+                        public void writeTo(final OutputStream out) throws IOException {
+                            out.write(head.toString().getBytes("UTF-8"));
+                            final long sent = Base64Chunks.encode(content, out, length);
+                            if (sent < length) {
+                                throw new IOException("Attachment " + name + " ended after " + sent + " of "
+                                        + length + " bytes");
+                            }
+                            out.write(tail.getBytes("UTF-8"));
+                        }
+                    })
+                    .header("Content-Type", "text/xml; charset=utf-8")
+                    .header("SOAPAction", "\"" + SOAP_ACTION + "mc_issue_attachment_add\"")
+                    .acceptAnyCertificate(!PooledHttpTransport.ID.equals(site.getTransport()));
+            if (site.getBasicUserName() != null && site.getPlainBasicPassword() != null) {
+                request.basicAuth(site.getBasicUserName(), site.getPlainBasicPassword());
+            }
+            return PooledHttpTransport.get().stream(request, site.getTransportStatistics(),
+                    new PooledHttpTransport.ResponseReader<Integer>() {
+                        public Integer read(final int status, final String contentType, final InputStream in)
+                                throws IOException, MantisHandlingException {
+                            final String response = IOUtils.toString(in, "UTF-8");
+                            final Matcher fault = FAULT.matcher(response);
+                            if (fault.find()) {
+                                throw new MantisHandlingException(fault.group(1));
+                            }
+                            final Matcher result = RETURN.matcher(response);
+                            if (status >= HttpURLConnection.HTTP_MULT_CHOICE || !result.find()) {
+                                throw new IOException("HTTP " + status + " without attachment id");
+                            }
+                            return Integer.valueOf(result.group(1));
+                        }
+                    });
+        } catch (final IOException e) {
+            throw new MantisHandlingException(e);
+        }
+    }
+
     public hudson.plugins.mantis.soap.mantis120.IssueHeaderData[] /*BigInteger[]*/ tjd_getTargetVersionIssues(int projectID , String targetVersion, PrintStream logger) throws MantisHandlingException {
         if (targetVersion == "") {
             throw new MantisHandlingException("target version should not be null.");
@@ -235,6 +354,154 @@ public final class MantisSessionImpl extends AbstractMantisSession {
         return issuesHeaders;
     }
 
+    @Override
+    public List<Integer> searchIssueIds(final int projectId, final String targetVersion)
+            throws MantisHandlingException {
+        final FilterSearchData data = new FilterSearchData();
+        data.setProject(new ObjectRef(BigInteger.valueOf(projectId), null));
+        data.setTarget_version(targetVersion);
+        final BigInteger[] ids;
+        try {
+            ids = portType.mc_filter_search_issue_ids(site.getUserName(), site.getPlainPassword(), data);
+        } catch (final RemoteException e) {
+            throw new MantisHandlingException(e);
+        }
+        final List<Integer> result = new ArrayList<Integer>();
+        if (ids != null) {
+            for (final BigInteger id : ids) {
+                result.add(id.intValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the full issues rather than their headers: only full issues give the target and fixed versions.
+     */
+    @Override
+    public List<MantisIssueHeader> getProjectIssueHeaders(final int projectId, final int page, final int perPage)
+            throws MantisHandlingException {
+        final IssueData[] issues;
+        try {
+            issues = portType.mc_project_get_issues(site.getUserName(), site.getPlainPassword(),
+                    BigInteger.valueOf(projectId), BigInteger.valueOf(page), BigInteger.valueOf(perPage));
+        } catch (final RemoteException e) {
+            throw new MantisHandlingException(e);
+        }
+        final List<MantisIssueHeader> result = new ArrayList<MantisIssueHeader>();
+        if (issues != null) {
+            for (final IssueData issue : issues) {
+                result.add(header(issue.getId().intValue(), issue));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public MantisIssueHeader getIssueHeader(final int id) throws MantisHandlingException {
+        return header(id, getIssueData(id));
+    }
+
+    private static MantisIssueHeader header(final int id, final IssueData data) {
+        return new MantisIssueHeader(id, data.getProject().getId().intValue(), data.getStatus().getId().intValue(),
+                data.getSummary(), millis(data.getLast_updated()), Util.fixNull(data.getTarget_version()),
+                Util.fixNull(data.getFixed_in_version()));
+    }
+
+    private static long millis(final Calendar calendar) {
+        return calendar != null ? calendar.getTimeInMillis() : 0;
+    }
+
+    /**
+     * Streams the search response through a StAX decoder instead of the stubs, on sites using the
+     * pooled transport; the others, for instance those whose certificate is only accepted by the Axis
+     * transport, go through the stubs. Falls back to the stubs if the streamed call fails before any
+     * header has been decoded.
+     */
+    @Override
+    public int searchIssueHeaders(final int projectId, final String targetVersion,
+            final IssueHeaderHandler handler, final PrintStream logger) throws MantisHandlingException {
+        if (!PooledHttpTransport.ID.equals(site.getTransport())) {
+            return super.searchIssueHeaders(projectId, targetVersion, handler, logger);
+        }
+        final int[] decoded = new int[1];
+        final IssueHeaderHandler counting = new IssueHeaderHandler() {
+            public void header(final MantisIssueHeader header) throws MantisHandlingException {
+                handler.header(header);
+                decoded[0]++;
+            }
+        };
+        try {
+            return streamIssueHeaders(projectId, targetVersion, counting);
+        } catch (final IOException e) {
+            if (decoded[0] > 0) {
+                throw new MantisHandlingException(e);
+            }
+            LOGGER.log(Level.FINE, "Streamed issue search failed, using the stubs", e);
+            return super.searchIssueHeaders(projectId, targetVersion, handler, logger);
+        }
+    }
+
+    private int streamIssueHeaders(final int projectId, final String targetVersion,
+            final IssueHeaderHandler handler) throws IOException, MantisHandlingException {
+        final StringBuilder xml = new StringBuilder(1024);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+                .append("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"")
+                .append(" xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\"")
+                .append(" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"")
+                .append(" xmlns:tns=\"").append(NAMESPACE).append("\">")
+                .append("<soapenv:Body>")
+                .append("<tns:mc_filter_search_issue_headers")
+                .append(" soapenv:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\">")
+                .append("<username xsi:type=\"xsd:string\">").append(Util.xmlEscape(Util.fixNull(site.getUserName())))
+                .append("</username>")
+                .append("<password xsi:type=\"xsd:string\">").append(Util.xmlEscape(Util.fixNull(site.getPlainPassword())))
+                .append("</password>")
+                .append("<filter xsi:type=\"tns:FilterSearchData\">")
+                .append("<project xsi:type=\"tns:ObjectRef\"><id xsi:type=\"xsd:integer\">").append(projectId)
+                .append("</id></project>")
+                .append("<target_version xsi:type=\"xsd:string\">").append(Util.xmlEscape(Util.fixNull(targetVersion)))
+                .append("</target_version>")
+                .append("</filter>")
+                .append("</tns:mc_filter_search_issue_headers>")
+                .append("</soapenv:Body></soapenv:Envelope>");
+        final byte[] body = xml.toString().getBytes("UTF-8");
+
+        final TransportRequest request = new TransportRequest(new URL(site.getUrl(), END_POINT), body, body.length)
+                .header("Content-Type", "text/xml; charset=utf-8")
+                .header("SOAPAction", "\"" + SOAP_ACTION + "mc_filter_search_issue_headers\"");
+        if (site.getCompression() != MantisSite.Compression.NONE) {
+            request.header("Accept-Encoding", "gzip");
+        }
+        if (site.getBasicUserName() != null && site.getPlainBasicPassword() != null) {
+            request.basicAuth(site.getBasicUserName(), site.getPlainBasicPassword());
+        }
+        return PooledHttpTransport.get().stream(request, site.getTransportStatistics(),
+                new PooledHttpTransport.ResponseReader<Integer>() {
+                    public Integer read(final int status, final String contentType, final InputStream in)
+                            throws IOException, MantisHandlingException {
+                        // a SOAP fault comes with a 500
+                        if (status >= HttpURLConnection.HTTP_MULT_CHOICE
+                                && status != HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                            throw new IOException("HTTP " + status);
+                        }
+                        try {
+                            return IssueHeaderDecoder.decode(in, handler);
+                        } catch (final XMLStreamException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                });
+    }
+
+    private static final String NAMESPACE = "http://futureware.biz/mantisconnect";
+
+    private static final Pattern RETURN = Pattern.compile("<return[^>]*>\\s*(\\d+)\\s*</return>");
+
+    private static final Pattern FAULT = Pattern.compile("<faultstring[^>]*>([^<]*)</faultstring>");
+
+    private static final String SOAP_ACTION = "http://www.mantisbt.org/bugs/api/soap/mantisconnect.php/";
+
     private static final Logger LOGGER = Logger.getLogger(MantisSessionImpl.class.getName());
     
     public List<MantisProjectVersion> getProjectVersions(BigInteger projectId) throws MantisHandlingException {
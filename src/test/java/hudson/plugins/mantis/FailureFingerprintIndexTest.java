@@ -0,0 +1,158 @@
+package hudson.plugins.mantis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Test class.
+ */
+public class FailureFingerprintIndexTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private MantisSite site;
+
+    private FailureFingerprintIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        site = new MantisSite(new URL("http://localhost/mantis/"), "V120", "test", "test", null, null);
+        index = new FailureFingerprintIndex();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testFilesOncePerFingerprint() throws Exception {
+        final AtomicInteger filed = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> builds = new ArrayList<Future<Integer>>();
+        for (int i = 1; i <= 8; i++) {
+            final int buildNumber = i;
+            builds.add(executor.submit(new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    start.await();
+                    // what MantisIssueRegister does for a failed build
+                    FailureFingerprintIndex.lock(site, "fp");
+                    try {
+                        FailureFingerprintIndex.Entry entry = index.find(site, "fp");
+                        if (entry != null) {
+                            return index.recur(site, "fp", buildNumber).getIssueNo();
+                        }
+                        Thread.sleep(10);
+                        int no = 100 + filed.incrementAndGet();
+                        index.register(site, "fp", "job", no, buildNumber);
+                        return no;
+                    } finally {
+                        FailureFingerprintIndex.unlock(site, "fp");
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Integer> build : builds) {
+            assertEquals(101, build.get(10, TimeUnit.SECONDS).intValue());
+        }
+        assertEquals(1, filed.get());
+        assertEquals(8, index.find(site, "fp").getCount());
+    }
+
+    @Test
+    public void testLockIsPerFingerprint() throws Exception {
+        FailureFingerprintIndex.lock(site, "fp1");
+        boolean held = true;
+        try {
+            // another fingerprint is not held up
+            executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    FailureFingerprintIndex.lock(site, "fp2");
+                    FailureFingerprintIndex.unlock(site, "fp2");
+                    return null;
+                }
+            }).get(10, TimeUnit.SECONDS);
+
+            Future<Void> same = executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    FailureFingerprintIndex.lock(site, "fp1");
+                    FailureFingerprintIndex.unlock(site, "fp1");
+                    return null;
+                }
+            });
+            try {
+                same.get(200, TimeUnit.MILLISECONDS);
+                fail("the same fingerprint was locked twice");
+            } catch (TimeoutException e) {
+                // still waiting
+            }
+            FailureFingerprintIndex.unlock(site, "fp1");
+            held = false;
+            same.get(10, TimeUnit.SECONDS);
+        } finally {
+            if (held) {
+                FailureFingerprintIndex.unlock(site, "fp1");
+            }
+        }
+    }
+
+    @Test
+    public void testRecurrence() {
+        index.register(site, "fp", "job", 100, 5);
+
+        FailureFingerprintIndex.Entry entry = index.recur(site, "fp", 7);
+        assertNotNull(entry);
+        assertEquals(100, entry.getIssueNo());
+        assertEquals(2, entry.getCount());
+        assertEquals(5, entry.getFirstBuild());
+        assertEquals(7, entry.getLastBuild());
+
+        assertNull(index.recur(site, "other", 7));
+        assertNull(index.find(site, "other"));
+    }
+
+    @Test
+    public void testFilesAnewAfterResolve() {
+        index.register(site, "fp", "job", 100, 5);
+        index.register(site, "fp2", "other job", 200, 3);
+
+        index.resolve("job");
+        assertNull(index.find(site, "fp"));
+        assertEquals(200, index.find(site, "fp2").getIssueNo());
+
+        index.register(site, "fp", "job", 101, 6);
+        FailureFingerprintIndex.Entry entry = index.find(site, "fp");
+        assertEquals(101, entry.getIssueNo());
+        assertEquals(1, entry.getCount());
+        assertEquals(6, entry.getFirstBuild());
+
+        // a ticket closed in Mantis
+        index.forget(site, "fp");
+        assertNull(index.find(site, "fp"));
+        assertTrue(index.find(site, "fp2") != null);
+    }
+}
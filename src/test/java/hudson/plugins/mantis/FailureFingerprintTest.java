@@ -0,0 +1,44 @@
+package hudson.plugins.mantis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Test class.
+ */
+public class FailureFingerprintTest {
+
+    @Test
+    public void testNormalize() {
+        assertEquals("[ERROR] Failed at line # in #ms",
+                FailureFingerprint.normalize("[ERROR]   Failed at line 42 in 1234ms "));
+        assertEquals("Segfault at # (pid #)", FailureFingerprint.normalize("Segfault at 0x7ffe12ab (pid 811)"));
+    }
+
+    @Test
+    public void testLogSignatureKeepsLastErrorLines() {
+        List<String> lines = Arrays.asList(
+                "Building in workspace",
+                "ERROR: one 1",
+                "compiling",
+                "ERROR: two 2",
+                "ERROR: three 3",
+                "ERROR: four 4",
+                "ERROR: five 5",
+                "ERROR: six 6",
+                "Finished: FAILURE");
+        List<String> signature = FailureFingerprint.logSignature(lines);
+        assertEquals(5, signature.size());
+        assertEquals("ERROR: three #", signature.get(0));
+        assertEquals("Finished: FAILURE", signature.get(4));
+    }
+
+    @Test
+    public void testLogSignatureIgnoresOrdinaryLines() {
+        assertTrue(FailureFingerprint.logSignature(Arrays.asList("Building", "Finished: SUCCESS")).isEmpty());
+    }
+}
@@ -0,0 +1,113 @@
+package hudson.plugins.mantis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class.
+ */
+public class IssueBuildIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testFind() throws Exception {
+        File file = new File(tmp.getRoot(), "mantis/issues.index");
+        IssueBuildIndex index = new IssueBuildIndex(file);
+        index.add(10, ids(IssueBuildIndex.Kind.REFERENCED, 100, 101));
+        index.add(11, ids(IssueBuildIndex.Kind.REFERENCED, 100));
+        Map<IssueBuildIndex.Kind, List<Integer>> both = ids(IssueBuildIndex.Kind.REFERENCED, 100);
+        both.put(IssueBuildIndex.Kind.CLOSED, Arrays.asList(100));
+        index.add(12, both);
+        index.delete(11);
+
+        index = new IssueBuildIndex(file);
+        Map<Integer, IssueBuildIndex.Kind> builds = index.find(100);
+        assertEquals(Arrays.asList(12, 10), Arrays.asList(builds.keySet().toArray()));
+        assertEquals(IssueBuildIndex.Kind.CLOSED, builds.get(12));
+        assertEquals(IssueBuildIndex.Kind.REFERENCED, builds.get(10));
+        assertEquals(1, index.find(101).size());
+        assertTrue(index.find(102).isEmpty());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testIgnoresTruncatedRecord() throws Exception {
+        File file = new File(tmp.getRoot(), "mantis/issues.index");
+        IssueBuildIndex index = new IssueBuildIndex(file);
+        index.add(10, ids(IssueBuildIndex.Kind.REFERENCED, 100));
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("BUILD 11 CLOSED 10".getBytes("UTF-8"));
+        out.close();
+
+        index = new IssueBuildIndex(file);
+        index.add(12, ids(IssueBuildIndex.Kind.FILED, 200));
+
+        index = new IssueBuildIndex(file);
+        assertEquals(1, index.find(100).size());
+        assertTrue(index.find(10).isEmpty());
+        assertEquals(IssueBuildIndex.Kind.FILED, index.find(200).get(12));
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        File file = new File(tmp.getRoot(), "mantis/issues.index");
+        IssueBuildIndex index = new IssueBuildIndex(file);
+        for (int i = 1; i <= 40; i++) {
+            index.add(i, ids(IssueBuildIndex.Kind.REFERENCED, 100 + i));
+        }
+        index.backfilled();
+        for (int i = 1; i < 40; i++) {
+            index.delete(i);
+        }
+
+        List<String> lines = new ArrayList<String>();
+        for (String line : FileUtils.readLines(file, "UTF-8")) {
+            if (line.length() > 0) {
+                lines.add(line);
+            }
+        }
+        assertTrue(lines.toString(), lines.size() < 40);
+        index = new IssueBuildIndex(file);
+        assertEquals(1, index.size());
+        assertEquals(IssueBuildIndex.Kind.REFERENCED, index.find(140).get(40));
+        assertTrue(index.isBackfilled());
+    }
+
+    @Test
+    public void testForget() throws Exception {
+        File folder = tmp.newFolder("folder");
+        File job = new File(folder, "jobs/job");
+        File other = tmp.newFolder("other");
+        IssueBuildIndex index = IssueBuildIndex.of(job);
+        IssueBuildIndex kept = IssueBuildIndex.of(other);
+        assertSame(index, IssueBuildIndex.of(job));
+
+        IssueBuildIndex.forget(folder);
+        assertNotSame(index, IssueBuildIndex.of(job));
+        assertSame(kept, IssueBuildIndex.of(other));
+    }
+
+    private static Map<IssueBuildIndex.Kind, List<Integer>> ids(IssueBuildIndex.Kind kind, Integer... ids) {
+        Map<IssueBuildIndex.Kind, List<Integer>> map =
+                new EnumMap<IssueBuildIndex.Kind, List<Integer>>(IssueBuildIndex.Kind.class);
+        map.put(kind, Arrays.asList(ids));
+        return map;
+    }
+}
@@ -0,0 +1,45 @@
+package hudson.plugins.mantis;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.plugins.mantis.changeset.ChangeSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * Test class.
+ */
+public class IssueCheckinsTest {
+
+    @Test
+    public void testGroupByIssue() {
+        Map<Integer, Set<String>> issues = IssueCheckins.group(Arrays.asList(
+                changeSet(12, "r1"), changeSet(10, "r1"), changeSet(12, "r2"), changeSet(12, "r1")));
+        assertEquals(Arrays.asList(12, 10), new ArrayList<Integer>(issues.keySet()));
+        assertEquals(Arrays.asList("r1", "r2"), new ArrayList<String>(issues.get(12)));
+        assertEquals(Arrays.asList("r1"), new ArrayList<String>(issues.get(10)));
+    }
+
+    @Test
+    public void testComment() {
+        List<String> logs = Arrays.asList("r1" + ChangeSet.CRLF, "r2" + ChangeSet.CRLF);
+        assertEquals("header" + ChangeSet.CRLF + ChangeSet.CRLF + "r1" + ChangeSet.CRLF + "r2" + ChangeSet.CRLF,
+                IssueCheckins.comment("header", logs));
+    }
+
+    private static ChangeSet changeSet(final int id, final String log) {
+        return new ChangeSet() {
+            public int getId() {
+                return id;
+            }
+
+            public String createChangeLog() {
+                return log;
+            }
+        };
+    }
+}
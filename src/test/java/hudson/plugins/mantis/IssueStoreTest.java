@@ -0,0 +1,158 @@
+package hudson.plugins.mantis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import hudson.plugins.mantis.model.MantisIssueHeader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class.
+ */
+public class IssueStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testReopen() throws Exception {
+        File file = new File(tmp.getRoot(), "issues.store");
+        IssueStore store = new IssueStore(file);
+        store.put(new MantisIssueHeader(100, 1, 10, "first", 1000L));
+        store.put(new MantisIssueHeader(101, 1, 80, "second", 2000L));
+        store.put(new MantisIssueHeader(100, 1, 90, "first, closed", 3000L, "1.2", "1.2"));
+        store.setWatermark(1, 3000L);
+
+        store = new IssueStore(file);
+        MantisIssueHeader header = store.get(100);
+        assertEquals(90, header.getStatus());
+        assertEquals("first, closed", header.getSummary());
+        assertEquals(3000L, header.getLastUpdated());
+        assertEquals("1.2", header.getTargetVersion());
+        assertEquals("1.2", header.getFixedInVersion());
+        assertEquals("second", store.get(101).getSummary());
+        assertNull(store.get(101).getTargetVersion());
+        assertEquals(Long.valueOf(3000L), store.getWatermark(1));
+    }
+
+    @Test
+    public void testDrop() throws Exception {
+        File file = new File(tmp.getRoot(), "issues.store");
+        IssueStore store = new IssueStore(file);
+        store.put(new MantisIssueHeader(100, 1, 10, "first", 1000L));
+        store.put(new MantisIssueHeader(200, 2, 10, "other", 1000L));
+        store.setWatermark(1, 1000L);
+        store.dropProject(1);
+
+        store = new IssueStore(file);
+        assertNull(store.get(100));
+        assertNull(store.getWatermark(1));
+        assertEquals("other", store.get(200).getSummary());
+    }
+
+    @Test
+    public void testSkipsUnknownRecord() throws Exception {
+        File file = new File(tmp.getRoot(), "issues.store");
+        IssueStore store = new IssueStore(file);
+        store.put(new MantisIssueHeader(100, 1, 10, "first", 1000L));
+
+        // a version list, as written by earlier releases
+        ByteBuffer record = ByteBuffer.allocate(1 + 3 + 8);
+        record.putInt(1 + 3);
+        record.put(new byte[] {4, 1, 2, 3});
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, 4);
+        record.putInt((int) crc.getValue());
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(record.array());
+        out.close();
+
+        store = new IssueStore(file);
+        store.put(new MantisIssueHeader(101, 1, 10, "second", 1000L));
+        assertEquals("first", store.get(100).getSummary());
+        store.compact();
+        assertEquals(store.getLiveSize(), store.getSize());
+        assertEquals("second", store.get(101).getSummary());
+    }
+
+    @Test
+    public void testIgnoresTruncatedRecord() throws Exception {
+        File file = new File(tmp.getRoot(), "issues.store");
+        IssueStore store = new IssueStore(file);
+        store.put(new MantisIssueHeader(100, 1, 10, "first", 1000L));
+        long size = store.getSize();
+
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[] {0, 0, 0, 40, 1, 0, 0});
+        out.close();
+
+        store = new IssueStore(file);
+        assertEquals(size, store.getSize());
+        assertEquals("first", store.get(100).getSummary());
+        store.put(new MantisIssueHeader(101, 1, 10, "second", 1000L));
+
+        store = new IssueStore(file);
+        assertEquals("second", store.get(101).getSummary());
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        File file = new File(tmp.getRoot(), "issues.store");
+        IssueStore store = new IssueStore(file);
+        for (int i = 0; i < 100; i++) {
+            store.put(new MantisIssueHeader(100, 1, i, "issue", i));
+        }
+        store.put(new MantisIssueHeader(101, 1, 10, "other", 1000L));
+        store.setWatermark(1, 99L);
+        long size = store.getSize();
+
+        store.compact();
+        assertTrue(store.getSize() < size);
+        assertEquals(99, store.get(100).getStatus());
+
+        store = new IssueStore(file);
+        assertEquals(99, store.get(100).getStatus());
+        assertEquals("other", store.get(101).getSummary());
+        assertEquals(Long.valueOf(99L), store.getWatermark(1));
+        assertEquals(store.getLiveSize() + 21, store.getSize());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        File file = new File(tmp.getRoot(), "issues.store");
+        IssueStore store = new IssueStore(file);
+        store.put(new MantisIssueHeader(100, 1, 10, "first", 1000L));
+        store.setWatermark(1, 1000L);
+        store.clear();
+        assertNull(store.get(100));
+        assertEquals(0, store.getSize());
+        store.put(new MantisIssueHeader(101, 1, 10, "second", 1000L));
+
+        store = new IssueStore(file);
+        assertNull(store.get(100));
+        assertNull(store.getWatermark(1));
+        assertEquals("second", store.get(101).getSummary());
+    }
+
+    @Test
+    public void testReadsAppendedRecords() throws Exception {
+        File file = new File(tmp.getRoot(), "issues.store");
+        IssueStore store = new IssueStore(file);
+        store.put(new MantisIssueHeader(1, 1, 10, "mapped", 1000L));
+        store = new IssueStore(file);
+        // enough records to go past the size where the file is mapped again
+        for (int i = 2; i < 20000; i++) {
+            store.put(new MantisIssueHeader(i, 1, 10, "issue " + i, i));
+            assertEquals("issue " + i, store.get(i).getSummary());
+        }
+        assertEquals("mapped", store.get(1).getSummary());
+        assertEquals("issue 2", store.get(2).getSummary());
+    }
+}
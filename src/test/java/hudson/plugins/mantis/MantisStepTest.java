@@ -0,0 +1,292 @@
+package hudson.plugins.mantis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import hudson.AbortException;
+import hudson.model.FreeStyleBuild;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+/**
+ * Test class for the Pipeline steps, run against a local endpoint answering canned Mantis responses.
+ */
+public class MantisStepTest {
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private static final Pattern OPERATION = Pattern.compile("<(?:[\\w-]+:)?(mc_\\w+)[\\s>/]");
+
+    /**
+     * response bodies by operation.
+     */
+    private final Map<String, String> responses = new HashMap<String, String>();
+
+    /**
+     * requests received, in order.
+     */
+    private final List<String> requests = new ArrayList<String>();
+
+    private HttpServer server;
+
+    private MantisSite site;
+
+    private FreeStyleBuild build;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                final String request = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+                final Matcher matcher = OPERATION.matcher(request);
+                final String operation = matcher.find() ? matcher.group(1) : "";
+                synchronized (requests) {
+                    requests.add(request);
+                }
+                final String body = responses.get(operation);
+                final byte[] bytes = envelope(body != null ? body
+                        : "<SOAP-ENV:Fault><faultcode>SOAP-ENV:Server</faultcode><faultstring>" + operation
+                                + " not expected</faultstring></SOAP-ENV:Fault>").getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+                exchange.sendResponseHeaders(body != null ? 200 : 500, bytes.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.start();
+        site = new MantisSite(new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/mantis/"),
+                "V120", "jenkins", "secret", null, null);
+        MantisProjectProperty.DESCRIPTOR.addSite(site);
+        build = j.buildAndAssertSuccess(j.createFreeStyleProject());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testFileIssue() throws Exception {
+        responses.put("mc_issue_add", response("mc_issue_add", "<return xsi:type=\"xsd:integer\">321</return>"));
+        MantisFileIssueStep step = new MantisFileIssueStep(12, " build ", " job failed ");
+        step.setSite(site.getName());
+        step.setDescription("see the log");
+        step.setKeepTicketPrivate(true);
+
+        Map<String, Object> values = execute(new MantisFileIssueStep.Execution(), step);
+
+        assertEquals(321, values.get("id"));
+        assertEquals(site.getIssueLink(321), values.get("url"));
+        assertTrue(values.get("millis") instanceof Long);
+        assertEquals(1, requests.size());
+        String request = requests.get(0);
+        assertTrue(request, request.contains(">build<"));
+        assertTrue(request, request.contains(">job failed<"));
+        assertTrue(request, request.contains(">see the log<"));
+        assertEquals(321, build.getAction(MantisRegisterAction.class).getIssueNo());
+    }
+
+    @Test
+    public void testFileIssueWithoutSummary() throws Exception {
+        MantisFileIssueStep step = new MantisFileIssueStep(12, "build", " ");
+        step.setSite(site.getName());
+        assertAborts(new MantisFileIssueStep.Execution(), step);
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    public void testUnknownSite() throws Exception {
+        MantisFileIssueStep step = new MantisFileIssueStep(12, "build", "job failed");
+        step.setSite("http://unknown/mantis/");
+        assertAborts(new MantisFileIssueStep.Execution(), step);
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    public void testRegisterVersion() throws Exception {
+        responses.put("mc_project_version_add",
+                response("mc_project_version_add", "<return xsi:type=\"xsd:integer\">8</return>"));
+        responses.put("mc_project_get_versions", response("mc_project_get_versions",
+                versions(version(7, "1.2", true, "2015-01-01"), version(8, "1.3", false, "2015-02-01"))));
+        responses.put("mc_project_version_update",
+                response("mc_project_version_update", "<return xsi:type=\"xsd:integer\">1</return>"));
+        MantisRegisterVersionStep step = new MantisRegisterVersionStep(12, " 1.3 ");
+        step.setSite(site.getName());
+        step.setObsoletePrevious(true);
+
+        Map<String, Object> values = execute(new MantisRegisterVersionStep.Execution(), step);
+
+        assertEquals(8, values.get("id"));
+        assertEquals("1.3", values.get("version"));
+        assertEquals(7, values.get("obsoleted"));
+        assertTrue(values.get("millis") instanceof Long);
+        assertEquals(3, requests.size());
+        assertTrue(requests.get(0), requests.get(0).contains(">1.3<"));
+        assertTrue(requests.get(0), requests.get(0).contains(Messages.MantisVersionRegister_VersionDescription()));
+        assertTrue(requests.get(2), requests.get(2).contains(">1.2<"));
+        assertNotNull(build.getAction(MantisVersionRegisterAction.class));
+    }
+
+    @Test
+    public void testRegisterVersionWithoutPrevious() throws Exception {
+        responses.put("mc_project_version_add",
+                response("mc_project_version_add", "<return xsi:type=\"xsd:integer\">8</return>"));
+        MantisRegisterVersionStep step = new MantisRegisterVersionStep(12, "1.3");
+        step.setSite(site.getName());
+        step.setDescription("first");
+
+        Map<String, Object> values = execute(new MantisRegisterVersionStep.Execution(), step);
+
+        assertEquals(8, values.get("id"));
+        assertFalse(values.containsKey("obsoleted"));
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0), requests.get(0).contains(">first<"));
+    }
+
+    @Test
+    public void testRegisterVersionWithoutVersion() throws Exception {
+        MantisRegisterVersionStep step = new MantisRegisterVersionStep(12, "");
+        step.setSite(site.getName());
+        assertAborts(new MantisRegisterVersionStep.Execution(), step);
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    public void testReleaseDryRun() throws Exception {
+        responses.put("mc_filter_search_issue_headers", response("mc_filter_search_issue_headers",
+                headers(header(100, 12, 80, "resolved"), header(101, 12, 90, "closed"), header(102, 13, 10, "other"))));
+        responses.put("mc_project_get_unreleased_versions", response("mc_project_get_unreleased_versions",
+                versions(version(8, "1.3", false, "2015-02-01"))));
+        MantisReleaseStep step = new MantisReleaseStep(12, "1.3");
+        step.setSite(site.getName());
+        step.setDryRun(true);
+
+        Map<String, Object> values = execute(new MantisReleaseStep.Execution(), step);
+
+        assertEquals("1.3", values.get("version"));
+        assertEquals(8, values.get("versionId"));
+        assertEquals(Boolean.TRUE, values.get("dryRun"));
+        assertEquals(Boolean.FALSE, values.get("released"));
+        assertEquals(Arrays.asList(100, 101), values.get("planned"));
+        assertTrue(values.get("preflightMillis") instanceof Long);
+        assertNull(values.get("closed"));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void testReleaseNotApplicable() throws Exception {
+        responses.put("mc_filter_search_issue_headers", response("mc_filter_search_issue_headers",
+                headers(header(100, 12, 50, "assigned"))));
+        responses.put("mc_project_get_unreleased_versions", response("mc_project_get_unreleased_versions",
+                versions(version(8, "1.3", false, "2015-02-01"))));
+        MantisReleaseStep step = new MantisReleaseStep(12, "1.3");
+        step.setSite(site.getName());
+        assertAborts(new MantisReleaseStep.Execution(), step);
+        // nothing is changed in Mantis
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void testReleaseWithoutVersion() throws Exception {
+        MantisReleaseStep step = new MantisReleaseStep(12, null);
+        step.setSite(site.getName());
+        assertAborts(new MantisReleaseStep.Execution(), step);
+        assertTrue(requests.isEmpty());
+    }
+
+    private Map<String, Object> execute(MantisStepExecution execution, Object step) throws Exception {
+        Field field = execution.getClass().getDeclaredField("step");
+        field.setAccessible(true);
+        field.set(execution, step);
+        return execution.execute(build, new StreamTaskListener(new ByteArrayOutputStream()));
+    }
+
+    private void assertAborts(MantisStepExecution execution, Object step) throws Exception {
+        try {
+            execute(execution, step);
+            fail();
+        } catch (AbortException e) {
+            // expected
+        }
+    }
+
+    private static String envelope(String body) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<SOAP-ENV:Envelope SOAP-ENV:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\""
+                + " xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\""
+                + " xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                + " xmlns:SOAP-ENC=\"http://schemas.xmlsoap.org/soap/encoding/\""
+                + " xmlns:tns=\"http://futureware.biz/mantisconnect\"><SOAP-ENV:Body>"
+                + body + "</SOAP-ENV:Body></SOAP-ENV:Envelope>";
+    }
+
+    private static String response(String operation, String value) {
+        return "<ns1:" + operation + "Response xmlns:ns1=\"http://futureware.biz/mantisconnect\">" + value
+                + "</ns1:" + operation + "Response>";
+    }
+
+    private static String versions(String... versions) {
+        StringBuilder items = new StringBuilder();
+        for (String version : versions) {
+            items.append(version);
+        }
+        return "<return xsi:type=\"SOAP-ENC:Array\" SOAP-ENC:arrayType=\"tns:ProjectVersionData[" + versions.length
+                + "]\">" + items + "</return>";
+    }
+
+    private static String version(int id, String name, boolean released, String date) {
+        return "<item xsi:type=\"tns:ProjectVersionData\"><id xsi:type=\"xsd:integer\">" + id + "</id>"
+                + "<name xsi:type=\"xsd:string\">" + name + "</name>"
+                + "<project_id xsi:type=\"xsd:integer\">12</project_id>"
+                + "<date_order xsi:type=\"xsd:dateTime\">" + date + "T00:00:00+00:00</date_order>"
+                + "<description xsi:type=\"xsd:string\"></description>"
+                + "<released xsi:type=\"xsd:boolean\">" + released + "</released>"
+                + "<obsolete xsi:type=\"xsd:boolean\">false</obsolete></item>";
+    }
+
+    private static String headers(String... headers) {
+        StringBuilder items = new StringBuilder();
+        for (String header : headers) {
+            items.append(header);
+        }
+        return "<return xsi:type=\"SOAP-ENC:Array\" SOAP-ENC:arrayType=\"tns:IssueHeaderData[" + headers.length
+                + "]\">" + items + "</return>";
+    }
+
+    private static String header(int id, int project, int status, String summary) {
+        return "<item xsi:type=\"tns:IssueHeaderData\"><id xsi:type=\"xsd:integer\">" + id + "</id>"
+                + "<last_updated xsi:type=\"xsd:dateTime\">2015-02-01T00:00:00+00:00</last_updated>"
+                + "<project xsi:type=\"xsd:integer\">" + project + "</project>"
+                + "<status xsi:type=\"xsd:integer\">" + status + "</status>"
+                + "<summary xsi:type=\"xsd:string\">" + summary + "</summary></item>";
+    }
+}
@@ -0,0 +1,109 @@
+package hudson.plugins.mantis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.plugins.mantis.model.MantisNote;
+import hudson.plugins.mantis.model.MantisViewState;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test class.
+ */
+public class NoteCoalescerTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1);
+
+    private final Map<Integer, MantisNote> added = new ConcurrentHashMap<Integer, MantisNote>();
+
+    private final CountDownLatch flushed = new CountDownLatch(1);
+
+    private int failures;
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testMergePrivateWins() throws Exception {
+        NoteCoalescer notes = new NoteCoalescer(sink(), HOUR, timer);
+        assertTrue(notes.addNote(1, new MantisNote("job-a #1", MantisViewState.PUBLIC)));
+        assertTrue(notes.addNote(1, new MantisNote("job-b #7", MantisViewState.PRIVATE)));
+        assertTrue(notes.addNote(1, new MantisNote("job-c #3", MantisViewState.PUBLIC)));
+        assertTrue(notes.addNote(2, new MantisNote("job-a #1", MantisViewState.PUBLIC)));
+        assertTrue(added.isEmpty());
+
+        notes.flush(1, true);
+        MantisNote note = added.get(1);
+        assertTrue(note.getText().contains("job-a #1\n\njob-b #7\n\njob-c #3"));
+        assertEquals(MantisViewState.PRIVATE, note.getViewState());
+        assertFalse(added.containsKey(2));
+
+        notes.flushAll();
+        assertEquals("job-a #1", added.get(2).getText());
+        assertEquals(MantisViewState.PUBLIC, added.get(2).getViewState());
+    }
+
+    @Test(timeout = 5000)
+    public void testWindowExpiry() throws Exception {
+        NoteCoalescer notes = new NoteCoalescer(sink(), 50, timer);
+        notes.addNote(1, new MantisNote("job-a #1", MantisViewState.PUBLIC));
+        notes.addNote(1, new MantisNote("job-b #2", MantisViewState.PUBLIC));
+        flushed.await();
+        assertTrue(added.get(1).getText().endsWith("job-a #1\n\njob-b #2"));
+    }
+
+    @Test
+    public void testNoWindow() throws Exception {
+        NoteCoalescer notes = new NoteCoalescer(sink(), 0, timer);
+        assertFalse(notes.addNote(1, new MantisNote("job-a #1", MantisViewState.PUBLIC)));
+        assertEquals("job-a #1", added.get(1).getText());
+    }
+
+    @Test
+    public void testFailureIsRetriedThenReported() throws Exception {
+        failures = NoteCoalescer.MAX_ATTEMPTS;
+        NoteCoalescer notes = new NoteCoalescer(sink(), HOUR, timer);
+        notes.addNote(1, new MantisNote("job-a #1", MantisViewState.PUBLIC));
+        notes.flush(1, true);
+        // later notes join the note being retried
+        notes.addNote(1, new MantisNote("job-b #2", MantisViewState.PUBLIC));
+        for (int i = 1; i < NoteCoalescer.MAX_ATTEMPTS; i++) {
+            notes.flush(1, true);
+        }
+        assertTrue(added.isEmpty());
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        notes.reportFailures(new PrintStream(log, true));
+        assertTrue(log.toString().contains("#1"));
+
+        log.reset();
+        notes.reportFailures(new PrintStream(log, true));
+        assertEquals("", log.toString());
+    }
+
+    private NoteCoalescer.Sink sink() {
+        return new NoteCoalescer.Sink() {
+            public void addNote(final int id, final MantisNote note) throws MantisHandlingException {
+                if (failures > 0) {
+                    failures--;
+                    throw new MantisHandlingException("unavailable");
+                }
+                added.put(id, note);
+                flushed.countDown();
+            }
+        };
+    }
+}
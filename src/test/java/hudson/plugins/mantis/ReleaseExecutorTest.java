@@ -0,0 +1,119 @@
+package hudson.plugins.mantis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.plugins.mantis.model.MantisNote;
+import hudson.plugins.mantis.model.MantisProjectVersion;
+import hudson.plugins.mantis.model.MantisViewState;
+import hudson.plugins.mantis.soap.MantisSession;
+import hudson.plugins.mantis.soap.mantis120.IssueData;
+import hudson.plugins.mantis.soap.mantis120.ObjectRef;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class.
+ */
+public class ReleaseExecutorTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final List<String> calls = new ArrayList<String>();
+
+    @Test
+    public void testResumeReleasesTheVersion() throws Exception {
+        File dir = tmp.getRoot();
+        ReleaseJournal journal = ReleaseJournal.open(dir, 1, "1.2", 10);
+        journal.noteAdded(100);
+        journal.issueUpdated(100);
+        // left by a release of the same version, before it was un-released in Mantis
+        FileOutputStream out = new FileOutputStream(new File(dir, "mantis/release-1-1.2.journal"), true);
+        out.write("\nVERSION .\n".getBytes("UTF-8"));
+        out.close();
+
+        journal = ReleaseJournal.open(dir, 1, "1.2", 11);
+        assertTrue(journal.isResumed());
+        ReleaseResult result = new ReleaseExecutor(null).apply(session(), plan(change(100, 80), change(101, 50)),
+                journal, new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(Arrays.asList(100), result.getResumedIssues());
+        assertEquals(Arrays.asList(101), result.getClosedIssues());
+        assertTrue(result.isVersionReleased());
+        assertEquals(Arrays.asList("getIssueData 101", "addNote 101", "updateIssue 101", "updateProjectVersion"),
+                calls);
+        assertFalse(new File(dir, "mantis/release-1-1.2.journal").exists());
+    }
+
+    @Test
+    public void testReleaseAgainAfterCompletion() throws Exception {
+        File dir = tmp.getRoot();
+        PrintStream logger = new PrintStream(new ByteArrayOutputStream());
+        new ReleaseExecutor(null).apply(session(), plan(change(100, 50)), ReleaseJournal.open(dir, 1, "1.2", 10),
+                logger);
+        calls.clear();
+
+        ReleaseJournal journal = ReleaseJournal.open(dir, 1, "1.2", 11);
+        assertFalse(journal.isResumed());
+        ReleaseResult result = new ReleaseExecutor(null).apply(session(), plan(change(100, 80), change(102, 50)),
+                journal, logger);
+        assertTrue(result.isVersionReleased());
+        assertEquals(Arrays.asList(100), result.getSkippedIssues());
+        assertEquals(Arrays.asList("getIssueData 100", "getIssueData 102", "addNote 102", "updateIssue 102",
+                "updateProjectVersion"), calls);
+    }
+
+    private static ReleasePlan.IssueChange change(final int id, final int currentStatus) {
+        return new ReleasePlan.IssueChange(id, "issue " + id, currentStatus, 80, "1.2",
+                new MantisNote("Released version 1.2", MantisViewState.PUBLIC));
+    }
+
+    private static ReleasePlan plan(final ReleasePlan.IssueChange... changes) {
+        MantisProjectVersion version = new MantisProjectVersion(BigInteger.ONE, BigInteger.TEN, "1.2", "", true);
+        return new ReleasePlan(1, "1.2", version, Arrays.asList(changes), Collections.<String>emptyList(), 0);
+    }
+
+    /**
+     * Issues 100 are already closed in the version, the others are still open.
+     */
+    private MantisSession session() {
+        return (MantisSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {MantisSession.class}, new InvocationHandler() {
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        final String name = method.getName();
+                        if (name.equals("getIssueData")) {
+                            calls.add(name + " " + args[0]);
+                            final IssueData issue = new IssueData();
+                            final boolean closed = ((Integer) args[0]) == 100;
+                            issue.setStatus(new ObjectRef(BigInteger.valueOf(closed ? 80 : 50), null));
+                            issue.setFixed_in_version(closed ? "1.2" : "");
+                            return issue;
+                        }
+                        if (name.equals("addNote") || name.equals("updateIssue")) {
+                            calls.add(name + " " + args[0]);
+                            return null;
+                        }
+                        if (name.equals("updateProjectVersion")) {
+                            calls.add(name);
+                            return true;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+}
@@ -0,0 +1,72 @@
+package hudson.plugins.mantis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class.
+ */
+public class ReleaseJournalTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testResume() throws Exception {
+        File dir = tmp.getRoot();
+        ReleaseJournal journal = ReleaseJournal.open(dir, 1, "1.2", 10);
+        assertFalse(journal.isResumed());
+        journal.noteAdded(100);
+        journal.issueUpdated(100);
+        journal.noteAdded(101);
+
+        journal = ReleaseJournal.open(dir, 1, "1.2", 11);
+        assertTrue(journal.isResumed());
+        assertEquals(Arrays.asList(10, 11), journal.getBuilds());
+        assertTrue(journal.isIssueUpdated(100));
+        assertTrue(journal.isNoteAdded(101));
+        assertFalse(journal.isIssueUpdated(101));
+    }
+
+    @Test
+    public void testIgnoresTruncatedRecord() throws Exception {
+        File dir = tmp.getRoot();
+        ReleaseJournal journal = ReleaseJournal.open(dir, 1, "1.2", 10);
+        journal.issueUpdated(100);
+
+        File file = new File(dir, "mantis/release-1-1.2.journal");
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("ISSUE 12".getBytes("UTF-8"));
+        out.close();
+
+        journal = ReleaseJournal.open(dir, 1, "1.2", 11);
+        assertTrue(journal.isIssueUpdated(100));
+        assertFalse(journal.isIssueUpdated(12));
+    }
+
+    @Test
+    public void testCompleteStartsAgain() throws Exception {
+        File dir = tmp.getRoot();
+        ReleaseJournal journal = ReleaseJournal.open(dir, 1, "1.2", 10);
+        journal.issueUpdated(100);
+        journal.complete();
+        assertFalse(new File(dir, "mantis/release-1-1.2.journal").exists());
+
+        journal = ReleaseJournal.open(dir, 1, "1.2", 11);
+        assertFalse(journal.isResumed());
+        assertFalse(journal.isIssueUpdated(100));
+    }
+
+    @Test
+    public void testSanitize() {
+        assertEquals("1.0_beta_2", ReleaseJournal.sanitize("1.0 beta/2"));
+    }
+}
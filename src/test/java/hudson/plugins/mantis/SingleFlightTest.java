@@ -0,0 +1,73 @@
+package hudson.plugins.mantis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Test class.
+ */
+public class SingleFlightTest {
+
+    @Test(timeout = 5000)
+    public void testConcurrentCallsShareOneCall() throws Exception {
+        final SingleFlight flight = new SingleFlight();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger made = new AtomicInteger();
+        final Callable<String> call = new Callable<String>() {
+            public String call() throws Exception {
+                made.incrementAndGet();
+                started.countDown();
+                release.await();
+                return "issue";
+            }
+        };
+
+        final Future<String> first = MantisExecutor.get().submit(new Callable<String>() {
+            public String call() throws Exception {
+                return flight.run("issue:1", call);
+            }
+        });
+        started.await();
+        final Future<String> second = MantisExecutor.get().submit(new Callable<String>() {
+            public String call() throws Exception {
+                return flight.run("issue:1", call);
+            }
+        });
+        while (flight.getShared() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertEquals("issue", first.get());
+        assertEquals("issue", second.get());
+        assertEquals(1, made.get());
+        assertEquals(1, flight.getCalls());
+        assertEquals(1, flight.getShared());
+
+        // nothing in flight any more: a new call is made
+        assertEquals("issue", flight.run("issue:1", call));
+        assertEquals(2, made.get());
+    }
+
+    @Test
+    public void testFailureIsShared() throws Exception {
+        final SingleFlight flight = new SingleFlight();
+        try {
+            flight.run("projects", new Callable<String>() {
+                public String call() throws Exception {
+                    throw new MantisHandlingException("down");
+                }
+            });
+        } catch (final MantisHandlingException e) {
+            assertEquals("down", e.getMessage());
+            return;
+        }
+        throw new AssertionError("no exception");
+    }
+}
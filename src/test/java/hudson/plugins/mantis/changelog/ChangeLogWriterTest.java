@@ -0,0 +1,89 @@
+package hudson.plugins.mantis.changelog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.FilePath;
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class.
+ */
+public class ChangeLogWriterTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final Date date = new Date(1420070400000L);
+
+    @Test
+    public void testText() throws Exception {
+        FilePath file = new ChangeLogWriter(ChangeLogFormat.TEXT, 0).write(new FilePath(tmp.getRoot()), entry("1.2"));
+
+        assertEquals("ChangeLog.txt", file.getName());
+        assertEquals("\r\n[Release] job-1.2 \r\nFrom svn://foxserver/trunk/job rev 42 \r\nIssue: 100,101",
+                file.readToString());
+    }
+
+    @Test
+    public void testMarkdown() throws Exception {
+        FilePath file = new ChangeLogWriter(ChangeLogFormat.MARKDOWN, 0).write(new FilePath(tmp.getRoot()),
+                entry("1.2"));
+
+        assertEquals("ChangeLog.md", file.getName());
+        assertEquals("\r\n## job 1.2\r\n\r\nBuild #7, " + formatDate() + ", revision 42\r\n\r\n"
+                + "- #100 first\r\n- #101 \r\n", file.readToString());
+    }
+
+    @Test
+    public void testJsonLines() throws Exception {
+        ChangeLogWriter writer = new ChangeLogWriter(ChangeLogFormat.JSON_LINES, 0);
+        writer.write(new FilePath(tmp.getRoot()), entry("1.2"));
+        FilePath file = writer.write(new FilePath(tmp.getRoot()), entry("1.3"));
+
+        assertEquals("ChangeLog.jsonl", file.getName());
+        assertEquals(json("1.2") + json("1.3"), file.readToString());
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        ChangeLogWriter writer = new ChangeLogWriter(ChangeLogFormat.TEXT, 1);
+        for (int i = 1; i <= 8; i++) {
+            writer.write(new FilePath(tmp.getRoot()), entry("1." + i));
+        }
+
+        assertTrue(read("ChangeLog.txt").contains("job-1.8 "));
+        for (int i = 1; i <= ChangeLogWriter.KEEP; i++) {
+            assertTrue(read("ChangeLog." + i + ".txt").contains("job-1." + (8 - i) + " "));
+        }
+        assertFalse(new File(tmp.getRoot(), "ChangeLog.6.txt").exists());
+        assertEquals(0, ChangeLogWriter.lockedFiles());
+    }
+
+    private ReleaseEntry entry(String version) {
+        return new ReleaseEntry("job", version, "42", 7, date,
+                Arrays.asList(new ReleaseEntry.Issue(100, "first"), new ReleaseEntry.Issue(101, null)));
+    }
+
+    private String json(String version) {
+        return "{\"job\":\"job\",\"version\":\"" + version + "\",\"build\":7,\"revision\":\"42\",\"date\":\""
+                + formatDate() + "\",\"issues\":[{\"id\":100,\"summary\":\"first\"},{\"id\":101,\"summary\":\"\"}]}\n";
+    }
+
+    private String formatDate() {
+        return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.ENGLISH).format(date);
+    }
+
+    private String read(String name) throws Exception {
+        return FileUtils.readFileToString(new File(tmp.getRoot(), name), "UTF-8");
+    }
+}
@@ -0,0 +1,60 @@
+package hudson.plugins.mantis.scripts;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.junit.Test;
+
+/**
+ * Test class.
+ */
+public class BoundedContentOutputStreamTest {
+
+    @Test
+    public void testWithinLimit() throws Exception {
+        BoundedContentOutputStream out = new BoundedContentOutputStream(16);
+        out.write("hello".getBytes("UTF-8"));
+        out.close();
+
+        assertFalse(out.isTruncated());
+        assertNull(out.getSpillFile());
+        assertEquals(5, out.getCount());
+        assertEquals("hello", out.getHead());
+    }
+
+    @Test
+    public void testSpillsCompleteContent() throws Exception {
+        BoundedContentOutputStream out = new BoundedContentOutputStream(4);
+        out.write("abc".getBytes("UTF-8"));
+        out.write("defgh".getBytes("UTF-8"));
+        out.close();
+
+        assertTrue(out.isTruncated());
+        assertEquals(8, out.getCount());
+        assertEquals("abcd", out.getHead());
+        File spill = out.getSpillFile();
+        assertNotNull(spill);
+        assertEquals("abcdefgh", new String(Files.readAllBytes(spill.toPath()), "UTF-8"));
+
+        out.discard();
+        assertFalse(spill.exists());
+    }
+
+    @Test
+    public void testTruncatesAtCharacterBoundary() throws Exception {
+        // "a" + U+00E9 (2 bytes) + U+3042 (3 bytes)
+        byte[] bytes = "aéあ".getBytes("UTF-8");
+        BoundedContentOutputStream out = new BoundedContentOutputStream(5);
+        out.write(bytes);
+        out.close();
+
+        assertTrue(out.isTruncated());
+        assertEquals("aé", out.getHead());
+        out.discard();
+    }
+}
@@ -0,0 +1,64 @@
+package hudson.plugins.mantis.scripts;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test class.
+ */
+public class LogTailTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testLastLines() throws Exception {
+        File log = write("a\nb\r\nc\nd\n");
+        assertEquals(Arrays.asList("c", "d"), LogTail.read(log, UTF8, 1024, 2));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), LogTail.read(log, UTF8, 1024, 10));
+        assertEquals(Arrays.asList("d"), LogTail.read(write("a\nb\nc\nd"), UTF8, 1024, 1));
+    }
+
+    @Test
+    public void testDropsLineCutByMaxBytes() throws Exception {
+        File log = write("first line\nsecond\nthird\n");
+        assertEquals(Arrays.asList("second", "third"), LogTail.read(log, UTF8, 15, 10));
+    }
+
+    @Test
+    public void testLargeLog() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        List<String> lines = LogTail.read(write(text.toString()), UTF8, 64 * 1024, 3);
+        assertEquals(Arrays.asList("line 19997", "line 19998", "line 19999"), lines);
+    }
+
+    @Test
+    public void testErrorWindows() {
+        List<String> lines = Arrays.asList("a", "b", "ERROR one", "c", "d", "e", "f", "g", "BUILD FAILED", "h");
+        assertEquals(Arrays.asList("b", "ERROR one", "c", LogTail.GAP, "g", "BUILD FAILED", "h"),
+                LogTail.errorWindows(lines, LogTail.ERROR_LINE, 1));
+        assertEquals(Arrays.asList("ERROR one", LogTail.GAP, "BUILD FAILED"),
+                LogTail.errorWindows(lines, LogTail.ERROR_LINE, 0));
+    }
+
+    private File write(String text) throws Exception {
+        File file = File.createTempFile("log", ".txt", tmp.getRoot());
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(text.getBytes(UTF8));
+        out.close();
+        return file;
+    }
+}
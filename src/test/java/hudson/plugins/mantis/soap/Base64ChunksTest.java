@@ -0,0 +1,57 @@
+package hudson.plugins.mantis.soap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+/**
+ * Test class.
+ */
+public class Base64ChunksTest {
+
+    @Test
+    public void testSameAsWholeEncoding() throws Exception {
+        Random random = new Random(42);
+        for (int size : new int[] {0, 1, 2, 3, Base64Chunks.CHUNK_SIZE - 1, Base64Chunks.CHUNK_SIZE,
+            3 * Base64Chunks.CHUNK_SIZE + 2}) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(size, Base64Chunks.encode(new Trickle(content), out, Long.MAX_VALUE));
+            assertEquals(new String(Base64.encodeBase64(content), "US-ASCII"), out.toString("US-ASCII"));
+        }
+    }
+
+    @Test
+    public void testReadsAtMostMax() throws Exception {
+        byte[] content = new byte[Base64Chunks.CHUNK_SIZE + 100];
+        new Random(1).nextBytes(content);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(Base64Chunks.CHUNK_SIZE + 10,
+                Base64Chunks.encode(new ByteArrayInputStream(content), out, Base64Chunks.CHUNK_SIZE + 10));
+        byte[] expected = Arrays.copyOf(content, Base64Chunks.CHUNK_SIZE + 10);
+        assertEquals(new String(Base64.encodeBase64(expected), "US-ASCII"), out.toString("US-ASCII"));
+    }
+
+    /**
+     * Returns few bytes per read, like a remote stream.
+     */
+    private static final class Trickle extends FilterInputStream {
+
+        Trickle(byte[] content) {
+            super(new ByteArrayInputStream(content));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1000));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package hudson.plugins.mantis.soap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import hudson.plugins.mantis.MantisHandlingException;
+import hudson.plugins.mantis.model.MantisIssueHeader;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Test class.
+ */
+public class IssueHeaderDecoderTest {
+
+    private static final String ENVELOPE_START =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">"
+            + "<SOAP-ENV:Body>";
+
+    private static final String ENVELOPE_END = "</SOAP-ENV:Body></SOAP-ENV:Envelope>";
+
+    @Test
+    public void testDecode() throws Exception {
+        String xml = ENVELOPE_START
+                + "<ns1:mc_filter_search_issue_headersResponse xmlns:ns1=\"http://futureware.biz/mantisconnect\">"
+                + "<return>"
+                + "<item><id>12</id><view_state>10</view_state><last_updated>2015-03-01T10:00:00+00:00</last_updated>"
+                + "<project>3</project><category>build</category><status>80</status>"
+                + "<summary>fix &amp; test</summary><handler xsi:nil=\"true\"/></item>"
+                + "<item><id>13</id><project>4</project><status>90</status><summary>other</summary></item>"
+                + "</return>"
+                + "</ns1:mc_filter_search_issue_headersResponse>"
+                + ENVELOPE_END;
+        final List<MantisIssueHeader> headers = new ArrayList<MantisIssueHeader>();
+        int count = IssueHeaderDecoder.decode(new ByteArrayInputStream(xml.getBytes("UTF-8")),
+                new IssueHeaderHandler() {
+                    public void header(MantisIssueHeader header) {
+                        headers.add(header);
+                    }
+                });
+
+        assertEquals(2, count);
+        assertEquals(12, headers.get(0).getId());
+        assertEquals(3, headers.get(0).getProjectId());
+        assertEquals(80, headers.get(0).getStatus());
+        assertEquals("fix & test", headers.get(0).getSummary());
+        assertEquals(1425204000000L, headers.get(0).getLastUpdated());
+        assertEquals(13, headers.get(1).getId());
+        assertEquals(90, headers.get(1).getStatus());
+        assertEquals(0, headers.get(1).getLastUpdated());
+        assertNull(headers.get(1).getTargetVersion());
+    }
+
+    @Test
+    public void testDecodeIssues() throws Exception {
+        String xml = ENVELOPE_START
+                + "<ns1:mc_project_get_issuesResponse xmlns:ns1=\"http://futureware.biz/mantisconnect\">"
+                + "<return>"
+                + "<item><id>12</id><view_state><id>10</id><name>public</name></view_state>"
+                + "<project><id>3</id><name>core</name></project><status><id>80</id><name>resolved</name></status>"
+                + "<summary>fix</summary><target_version>1.2</target_version>"
+                + "<fixed_in_version>1.2</fixed_in_version></item>"
+                + "<item><id>13</id><project><id>3</id></project><status><id>10</id></status><summary>new</summary>"
+                + "<target_version>1.3</target_version><fixed_in_version></fixed_in_version></item>"
+                + "</return>"
+                + "</ns1:mc_project_get_issuesResponse>"
+                + ENVELOPE_END;
+        final List<MantisIssueHeader> headers = new ArrayList<MantisIssueHeader>();
+        IssueHeaderDecoder.decode(new ByteArrayInputStream(xml.getBytes("UTF-8")), new IssueHeaderHandler() {
+            public void header(MantisIssueHeader header) {
+                headers.add(header);
+            }
+        });
+
+        assertEquals(3, headers.get(0).getProjectId());
+        assertEquals(80, headers.get(0).getStatus());
+        assertEquals("1.2", headers.get(0).getTargetVersion());
+        assertEquals("1.2", headers.get(0).getFixedInVersion());
+        assertEquals(10, headers.get(1).getStatus());
+        assertEquals("1.3", headers.get(1).getTargetVersion());
+        assertEquals("", headers.get(1).getFixedInVersion());
+    }
+
+    @Test
+    public void testFault() throws Exception {
+        String xml = ENVELOPE_START
+                + "<SOAP-ENV:Fault><faultcode>Client</faultcode><faultstring>Access denied</faultstring></SOAP-ENV:Fault>"
+                + ENVELOPE_END;
+        try {
+            IssueHeaderDecoder.decode(new ByteArrayInputStream(xml.getBytes("UTF-8")), new IssueHeaderHandler() {
+                public void header(MantisIssueHeader header) {
+                    fail();
+                }
+            });
+            fail();
+        } catch (MantisHandlingException e) {
+            assertEquals("Access denied", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package hudson.plugins.mantis.soap;
+
+import static org.junit.Assert.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import hudson.plugins.mantis.soap.mantis120.MantisConnectLocator;
+import hudson.plugins.mantis.soap.mantis120.MantisConnectPortType;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.logging.Logger;
+import org.apache.axis.client.AxisClient;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Compares the first call of a new session, stub setup included, on a new Axis engine as every
+ * session used to, with the same on the shared engine. The calls go to a local endpoint answering
+ * {@code mc_version}, the first call of a stub registers all its type mappings.
+ * Reports wall time, CPU time and allocated bytes per session.
+ * The benchmark is not part of the unit tests, run it with
+ * {@code mvn test -Dtest=SessionSetupBenchmarkTest} after removing its {@code @Ignore}.
+ */
+public class SessionSetupBenchmarkTest {
+
+    private static final int WARMUP = 200;
+
+    private static final int ITERATIONS = 2000;
+
+    private static final String STUBS = MantisConnectLocator.class.getPackage().getName();
+
+    private static final String VERSION_RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\""
+            + " xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\""
+            + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"><SOAP-ENV:Body>"
+            + "<ns1:mc_versionResponse xmlns:ns1=\"http://futureware.biz/mantisconnect\">"
+            + "<return xsi:type=\"xsd:string\">1.2.19</return></ns1:mc_versionResponse>"
+            + "</SOAP-ENV:Body></SOAP-ENV:Envelope>";
+
+    @Test
+    public void engineIsSharedByStubsTransportAndEncoding() {
+        assertSame(AbstractMantisSession.getEngine(STUBS, AxisTransport.INSTANCE, false),
+                AbstractMantisSession.getEngine(STUBS, AxisTransport.INSTANCE, false));
+        assertNotSame(AbstractMantisSession.getEngine(STUBS, AxisTransport.INSTANCE, false),
+                AbstractMantisSession.getEngine(STUBS, AxisTransport.INSTANCE, true));
+        assertNotSame(AbstractMantisSession.getEngine(STUBS, AxisTransport.INSTANCE, false),
+                AbstractMantisSession.getEngine("hudson.plugins.mantis.soap.mantis110",
+                        AxisTransport.INSTANCE, false));
+    }
+
+    @Ignore(value = "benchmark, sets up 4400 sessions and calls a local endpoint with each")
+    @Test
+    public void sharedEngineIsCheaper() throws Exception {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                final InputStream in = exchange.getRequestBody();
+                final byte[] buffer = new byte[4096];
+                while (in.read(buffer) >= 0) {
+                    // the request is not looked at
+                }
+                final byte[] body = VERSION_RESPONSE.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        try {
+            final URL endpoint = new URL("http://127.0.0.1:" + server.getAddress().getPort()
+                    + "/mantis/api/soap/mantisconnect.php");
+            final Setup fresh = new Setup() {
+                AxisClient engine() {
+                    return new AxisClient(AbstractMantisSession.createClientConfig(AxisTransport.INSTANCE, false));
+                }
+            };
+            final Setup shared = new Setup() {
+                AxisClient engine() {
+                    return AbstractMantisSession.getEngine(STUBS, AxisTransport.INSTANCE, false);
+                }
+            };
+
+            fresh.run(endpoint, WARMUP);
+            shared.run(endpoint, WARMUP);
+            final long[] freshCost = fresh.run(endpoint, ITERATIONS);
+            final long[] sharedCost = shared.run(endpoint, ITERATIONS);
+
+            LOGGER.info(String.format("first call, new engine:    %,d ns, %,d ns cpu, %,d bytes per session",
+                    freshCost[0] / ITERATIONS, freshCost[1] / ITERATIONS, freshCost[2] / ITERATIONS));
+            LOGGER.info(String.format("first call, shared engine: %,d ns, %,d ns cpu, %,d bytes per session",
+                    sharedCost[0] / ITERATIONS, sharedCost[1] / ITERATIONS, sharedCost[2] / ITERATIONS));
+            if (freshCost[2] >= 0) {
+                assertTrue(sharedCost[2] < freshCost[2]);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private abstract static class Setup {
+
+        abstract AxisClient engine();
+
+        /**
+         * @return wall nanoseconds, CPU nanoseconds and allocated bytes, -1 when the JVM cannot tell.
+         */
+        long[] run(final URL endpoint, final int iterations) throws Exception {
+            final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            final long start = System.nanoTime();
+            final long cpu = threads.getCurrentThreadCpuTime();
+            final long allocated = allocatedBytes(threads);
+            for (int i = 0; i < iterations; i++) {
+                final AxisClient engine = engine();
+                final MantisConnectLocator locator = new MantisConnectLocator();
+                locator.setEngineConfiguration(engine.getConfig());
+                locator.setEngine(engine);
+                final MantisConnectPortType port = locator.getMantisConnectPort(endpoint);
+                assertEquals("1.2.19", port.mc_version());
+            }
+            final long allocatedAfter = allocatedBytes(threads);
+            return new long[] {System.nanoTime() - start, threads.getCurrentThreadCpuTime() - cpu,
+                    allocated < 0 ? -1 : allocatedAfter - allocated};
+        }
+
+        private static long allocatedBytes(final ThreadMXBean threads) {
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+                        Thread.currentThread().getId());
+            }
+            return -1;
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(SessionSetupBenchmarkTest.class.getName());
+}
@@ -0,0 +1,76 @@
+package hudson.plugins.mantis.soap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Test class.
+ */
+public class SiteThrottleTest {
+
+    @Test(timeout = 5000)
+    public void testNestedCallsDoNotWait() throws Exception {
+        final SiteThrottle throttle = new SiteThrottle(1000, 1000, 1);
+        throttle.acquire();
+        throttle.acquire();
+        throttle.release();
+        throttle.release();
+        assertEquals(0, throttle.getActive());
+        assertEquals(1, throttle.getCalls());
+    }
+
+    @Test(timeout = 5000)
+    public void testJobsAreServedInTurn() throws Exception {
+        final SiteThrottle throttle = new SiteThrottle(1000, 1000, 1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        throttle.acquire();
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (final String name : Arrays.asList("big1", "big2", "big3", "small")) {
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    SiteThrottle.setJob(name.substring(0, name.length() - 1));
+                    try {
+                        throttle.acquire();
+                        order.add(name);
+                        throttle.release();
+                    } catch (final Exception e) {
+                        order.add(e.toString());
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+            while (throttle.getQueued() < threads.size()) {
+                Thread.sleep(1);
+            }
+        }
+        assertEquals(2, throttle.getQueuedJobs());
+
+        Thread.sleep(5);
+        throttle.release();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Arrays.asList("big1", "small", "big2", "big3"), order);
+        assertEquals(4, throttle.getWaits());
+        assertEquals(4, throttle.getMaxQueued());
+    }
+
+    @Test(timeout = 5000)
+    public void testRateIsLimited() throws Exception {
+        final SiteThrottle throttle = new SiteThrottle(100, 1, 10);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 6; i++) {
+            throttle.acquire();
+            throttle.release();
+        }
+        // one call from the burst, then one every 10 ms
+        assertEquals(true, System.nanoTime() - start >= 40000000L);
+    }
+}
@@ -0,0 +1,39 @@
+package hudson.plugins.mantis.soap;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test class.
+ */
+public class TransportSenderTest {
+
+    @Test
+    public void testRetriesWhenTheBodyCannotBeRead() {
+        assertTrue(TransportSender.retryUncompressed(400));
+        assertTrue(TransportSender.retryUncompressed(411));
+        assertTrue(TransportSender.retryUncompressed(415));
+    }
+
+    @Test
+    public void testDoesNotRetryAfterTheBodyMayHaveBeenRead() {
+        assertFalse(TransportSender.retryUncompressed(200));
+        assertFalse(TransportSender.retryUncompressed(401));
+        assertFalse(TransportSender.retryUncompressed(404));
+        // a SOAP fault, a PHP error page or a proxy error: the request may have been processed
+        assertFalse(TransportSender.retryUncompressed(500));
+        assertFalse(TransportSender.retryUncompressed(502));
+        assertFalse(TransportSender.retryUncompressed(504));
+    }
+
+    @Test
+    public void testOnlyClientErrorsRejectGzip() {
+        assertTrue(TransportSender.rejectsGzip(415, 200));
+        assertTrue(TransportSender.rejectsGzip(400, 200));
+        assertFalse(TransportSender.rejectsGzip(415, 500));
+        assertFalse(TransportSender.rejectsGzip(500, 200));
+        assertFalse(TransportSender.rejectsGzip(503, 200));
+    }
+}